@@ -0,0 +1,81 @@
+package dev.baecher.io;
+
+import dev.baecher.multipart.MultipartCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads 4 MB of bodies crafted from near boundaries up to a boundary at the end, with small
+ * reads from a source that delivers little data at a time. This is what an attacker controls
+ * for uploads from the public internet. Time per byte should not depend on the boundary
+ * length or the read size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AdversarialInputBenchmark {
+    @Param({"NEAR_BOUNDARY_HEAD", "NEAR_BOUNDARY_TAIL", "CRLF_DASHES"})
+    public MultipartCorpus.Content content;
+
+    @Param({"1", "64", "8192"})
+    public int readSize;
+
+    @Param({"1", "64"})
+    public int sourceReadSize;
+
+    @Param({"false", "true"})
+    public boolean lowLatency;
+
+    private byte[] data;
+    private byte[] sink;
+
+    @Setup
+    public void setUp() {
+        byte[] body = MultipartCorpus.body(content, 4 << 20);
+        data = new byte[body.length + MultipartCorpus.DELIMITER.length];
+        System.arraycopy(body, 0, data, 0, body.length);
+        System.arraycopy(MultipartCorpus.DELIMITER, 0, data, body.length, MultipartCorpus.DELIMITER.length);
+        sink = new byte[readSize];
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        InputStream source = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, sourceReadSize));
+            }
+        };
+
+        BoundaryInputStream bis = BoundaryInputStream
+                .builder(source)
+                .bufferSize(1 << 14)
+                .boundary(MultipartCorpus.DELIMITER)
+                .lowLatency(lowLatency)
+                .build();
+
+        long total = 0;
+        for (int n; (n = bis.read(sink)) != -1; ) {
+            total += n;
+        }
+
+        return total;
+    }
+}
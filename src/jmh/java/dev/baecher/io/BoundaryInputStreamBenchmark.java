@@ -0,0 +1,66 @@
+package dev.baecher.io;
+
+import dev.baecher.multipart.MultipartCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads 64 MB up to a boundary at the very end.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BoundaryInputStreamBenchmark {
+    @Param({"4096", "16384", "65536", "1048576"})
+    public int bufferSize;
+
+    @Param({"512", "8192"})
+    public int readSize;
+
+    @Param({"RANDOM", "TEXT", "CRLF_DASHES"})
+    public MultipartCorpus.Content content;
+
+    private byte[] data;
+    private byte[] sink;
+
+    @Setup
+    public void setUp() {
+        byte[] body = MultipartCorpus.body(content, 64 << 20);
+        data = new byte[body.length + MultipartCorpus.DELIMITER.length];
+        System.arraycopy(body, 0, data, 0, body.length);
+        System.arraycopy(MultipartCorpus.DELIMITER, 0, data, body.length, MultipartCorpus.DELIMITER.length);
+        sink = new byte[readSize];
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        BoundaryInputStream bis = BoundaryInputStream
+                .builder(new ByteArrayInputStream(data))
+                .bufferSize(bufferSize)
+                .boundary(MultipartCorpus.DELIMITER)
+                .build();
+
+        long total = 0;
+        for (int n; (n = bis.read(sink)) != -1; ) {
+            total += n;
+        }
+
+        return total;
+    }
+}
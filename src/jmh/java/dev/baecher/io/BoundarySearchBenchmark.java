@@ -0,0 +1,65 @@
+package dev.baecher.io;
+
+import dev.baecher.multipart.MultipartCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw search speed over 16 MB without a match.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BoundarySearchBenchmark {
+    @Param({"BOYER_MOORE", "SWAR", "KMP"})
+    public String search;
+
+    @Param({"delimiter", "headerEnd"})
+    public String pattern;
+
+    @Param({"RANDOM", "TEXT", "CRLF_DASHES", "NEAR_BOUNDARY_HEAD", "NEAR_BOUNDARY_TAIL"})
+    public MultipartCorpus.Content content;
+
+    private byte[] data;
+    private Boundary boundary;
+
+    @Setup
+    public void setUp() {
+        data = MultipartCorpus.body(content, 16 << 20);
+        byte[] b = pattern.equals("delimiter")
+                ? MultipartCorpus.DELIMITER
+                : "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        boundary = new Boundary(b, factory(search));
+    }
+
+    private static BoundarySearch.Factory factory(String search) {
+        switch (search) {
+            case "SWAR":
+                return BoundarySearch.SWAR;
+            case "KMP":
+                return BoundarySearch.KMP;
+            default:
+                return BoundarySearch.BOYER_MOORE;
+        }
+    }
+
+    @Benchmark
+    public int indexOf() {
+        return boundary.indexOf(data, 0, data.length);
+    }
+}
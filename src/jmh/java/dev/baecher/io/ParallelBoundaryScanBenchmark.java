@@ -0,0 +1,61 @@
+package dev.baecher.io;
+
+import dev.baecher.multipart.MultipartCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searching 256 MB for delimiters sequentially versus split across a fork/join pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ParallelBoundaryScanBenchmark {
+    @Param({"1", "4", "0"})
+    public int parallelism;
+
+    @Param({"RANDOM", "TEXT"})
+    public MultipartCorpus.Content content;
+
+    private byte[] data;
+    private Boundary boundary;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        data = MultipartCorpus.body(content, 256 << 20);
+        boundary = new Boundary(MultipartCorpus.DELIMITER);
+        pool = new ForkJoinPool(parallelism == 0 ? Runtime.getRuntime().availableProcessors() : parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int sequential() {
+        return boundary.indexOf(data, 0, data.length);
+    }
+
+    @Benchmark
+    public long[] parallel() {
+        return ParallelBoundaryScan.findAll(data, boundary, 0, data.length, pool, 1 << 22);
+    }
+}
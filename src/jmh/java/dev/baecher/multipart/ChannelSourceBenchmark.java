@@ -0,0 +1,71 @@
+package dev.baecher.multipart;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a 256 MB upload from a {@link FileChannel} into a heap or a direct buffer. Bodies
+ * are taken as buffer views, so the only copy left is the one into the parser's buffer,
+ * plus the JDK's own copy through a temporary direct buffer when the parser's is on the heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ChannelSourceBenchmark {
+    private static final int FILE_SIZE = 256 << 20;
+
+    @Param({"false", "true"})
+    public boolean direct;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("upload", ".multipart");
+        Files.write(file, MultipartCorpus.multipart(2, 64, 1, FILE_SIZE, MultipartCorpus.Content.RANDOM));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public long parse() throws IOException {
+        long total = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            StreamingMultipartParser parser = StreamingMultipartParser.builder(channel).directBuffer(direct).build();
+            while (parser.hasNext()) {
+                StreamingMultipartParser.Part part = parser.next();
+                for (ByteBuffer chunk; (chunk = part.readBuffer(1 << 16)) != null; ) {
+                    total += chunk.remaining();
+                }
+            }
+        }
+
+        return total;
+    }
+}
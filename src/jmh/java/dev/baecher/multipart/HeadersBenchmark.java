@@ -0,0 +1,79 @@
+package dev.baecher.multipart;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HeadersBenchmark {
+    @Param({"field", "file", "encodedFile"})
+    public String kind;
+
+    private byte[] headerBlock;
+    private Headers headers;
+
+    @Setup
+    public void setUp() {
+        String block;
+
+        switch (kind) {
+            case "field":
+                block = "Content-Disposition: form-data; name=\"field\"";
+                break;
+            case "file":
+                block = "Content-Disposition: form-data; name=\"upload\"; filename=\"photo.jpg\"\r\n"
+                        + "Content-Type: image/jpeg";
+                break;
+            case "encodedFile":
+                block = "Content-Disposition: form-data; name=\"upload\"; filename=\"photo.jpg\"; "
+                        + "filename*=utf-8''%e2%82%ac-photo.jpg\r\n"
+                        + "Content-Type: image/jpeg\r\n"
+                        + "Content-Transfer-Encoding: binary";
+                break;
+            default:
+                throw new IllegalArgumentException("unknown kind: " + kind);
+        }
+
+        headerBlock = block.getBytes(StandardCharsets.UTF_8);
+        headers = Headers.fromBytes(headerBlock);
+    }
+
+    @Benchmark
+    public Headers fromBytes() {
+        return Headers.fromBytes(headerBlock);
+    }
+
+    @Benchmark
+    public void fromBytesAndLookup(Blackhole blackhole) {
+        Headers h = Headers.fromBytes(headerBlock);
+        blackhole.consume(h.getName());
+        blackhole.consume(h.getFilename());
+    }
+
+    @Benchmark
+    public String getName() {
+        return headers.getName();
+    }
+
+    @Benchmark
+    public String getFilename() {
+        return headers.getFilename();
+    }
+}
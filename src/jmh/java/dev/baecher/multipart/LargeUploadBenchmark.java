@@ -0,0 +1,39 @@
+package dev.baecher.multipart;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end parse of a single 4 GB file that is generated on the fly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class LargeUploadBenchmark {
+    private static final long FILE_SIZE = 4L << 30;
+
+    @Param({"RANDOM", "TEXT"})
+    public MultipartCorpus.Content content;
+
+    private final byte[] sink = new byte[1 << 16];
+
+    @Benchmark
+    public long parse() throws IOException {
+        StreamingMultipartParser parser = new StreamingMultipartParser(MultipartCorpus.largeFile(FILE_SIZE, content));
+        return StreamingMultipartParserBenchmark.drain(parser, sink);
+    }
+}
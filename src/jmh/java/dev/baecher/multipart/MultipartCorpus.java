@@ -0,0 +1,175 @@
+package dev.baecher.multipart;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates multipart bodies for the benchmarks.
+ */
+public final class MultipartCorpus {
+    public static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+    public static final byte[] DELIMITER = ("\r\n--" + BOUNDARY).getBytes(StandardCharsets.US_ASCII);
+
+    public enum Content {
+        RANDOM,
+        TEXT,
+        // Pathological bodies that contain many (partial) boundary candidates
+        CRLF_DASHES,
+        NEAR_BOUNDARY_HEAD,
+        NEAR_BOUNDARY_TAIL
+    }
+
+    public enum Shape {
+        // Thousands of tiny text form fields, whatever the content
+        FORM_FIELDS,
+        // Some form fields plus a few files of a megabyte each
+        MIXED,
+        // A single large file
+        LARGE_FILE
+    }
+
+    private MultipartCorpus() {
+    }
+
+    public static byte[] body(Content content, int length) {
+        byte[] b = new byte[length];
+        byte[] unit;
+
+        switch (content) {
+            case RANDOM:
+                new Random(length).nextBytes(b);
+                return b;
+            case TEXT:
+                unit = "The quick brown fox jumps over the lazy dog.\r\n".getBytes(StandardCharsets.US_ASCII);
+                break;
+            case CRLF_DASHES:
+                unit = "\r\n--".getBytes(StandardCharsets.US_ASCII);
+                break;
+            case NEAR_BOUNDARY_HEAD:
+                unit = DELIMITER.clone();
+                unit[0] = 'X';
+                break;
+            case NEAR_BOUNDARY_TAIL:
+                unit = DELIMITER.clone();
+                unit[unit.length - 1] = 'X';
+                break;
+            default:
+                throw new IllegalArgumentException("unknown content: " + content);
+        }
+
+        for (int i = 0; i < length; i += unit.length) {
+            System.arraycopy(unit, 0, b, i, Math.min(unit.length, length - i));
+        }
+
+        return b;
+    }
+
+    public static byte[] multipart(Shape shape, Content content) {
+        switch (shape) {
+            case FORM_FIELDS:
+                return multipart(10000, 100, 0, 0, content);
+            case MIXED:
+                return multipart(200, 100, 20, 1 << 20, content);
+            case LARGE_FILE:
+                return multipart(0, 0, 1, 256 << 20, content);
+            default:
+                throw new IllegalArgumentException("unknown shape: " + shape);
+        }
+    }
+
+    public static byte[] multipart(int fieldCount, int fieldSize, int fileCount, int fileSize, Content content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] field = body(Content.TEXT, fieldSize);
+        byte[] file = body(content, fileSize);
+
+        for (int i = 0; i < fieldCount; i++) {
+            out.writeBytes(fieldHeader(i));
+            out.writeBytes(field);
+        }
+
+        for (int i = 0; i < fileCount; i++) {
+            out.writeBytes(fileHeader(i));
+            out.writeBytes(file);
+        }
+
+        out.writeBytes(trailer());
+        return Arrays.copyOfRange(out.toByteArray(), 2, out.size());
+    }
+
+    /**
+     * Streams a multipart body with a single file of the given size without holding
+     * it in memory.
+     */
+    public static InputStream largeFile(long fileSize, Content content) {
+        byte[] header = Arrays.copyOfRange(fileHeader(0), 2, fileHeader(0).length);
+        return new GeneratedInputStream(header, body(content, 1 << 20), fileSize, trailer());
+    }
+
+    private static byte[] fieldHeader(int index) {
+        return ("\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"field" + index + "\"\r\n"
+                + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] fileHeader(int index) {
+        return ("\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file" + index + "\"; filename=\"file" + index + ".bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n"
+                + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] trailer() {
+        return ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static class GeneratedInputStream extends InputStream {
+        private final byte[] header;
+        private final byte[] block;
+        private final long bodyLength;
+        private final byte[] trailer;
+        private final long totalLength;
+        private final byte[] oneByte = new byte[1];
+        private long position;
+
+        GeneratedInputStream(byte[] header, byte[] block, long bodyLength, byte[] trailer) {
+            this.header = header;
+            this.block = block;
+            this.bodyLength = bodyLength;
+            this.trailer = trailer;
+            totalLength = header.length + bodyLength + trailer.length;
+        }
+
+        @Override
+        public int read() {
+            return read(oneByte, 0, 1) == -1 ? -1 : oneByte[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position == totalLength) {
+                return -1;
+            }
+
+            int n;
+            if (position < header.length) {
+                n = Math.min(len, header.length - (int) position);
+                System.arraycopy(header, (int) position, b, off, n);
+            } else if (position < header.length + bodyLength) {
+                long bodyPosition = position - header.length;
+                int blockOffset = (int) (bodyPosition % block.length);
+                n = (int) Math.min(Math.min(len, block.length - blockOffset), bodyLength - bodyPosition);
+                System.arraycopy(block, blockOffset, b, off, n);
+            } else {
+                int trailerOffset = (int) (position - header.length - bodyLength);
+                n = Math.min(len, trailer.length - trailerOffset);
+                System.arraycopy(trailer, trailerOffset, b, off, n);
+            }
+
+            position += n;
+            return n;
+        }
+    }
+}
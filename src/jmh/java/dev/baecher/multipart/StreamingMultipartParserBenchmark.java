@@ -0,0 +1,95 @@
+package dev.baecher.multipart;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class StreamingMultipartParserBenchmark {
+    @Param({"65536"})
+    public int bufferSize;
+
+    @Param({"false", "true"})
+    public boolean reuseParts;
+
+    private final byte[] sink = new byte[8192];
+
+    /**
+     * Form fields are always text, so they get a state of their own instead of being
+     * crossed with every content kind.
+     */
+    @State(Scope.Benchmark)
+    public static class FormFields {
+        private byte[] data;
+
+        @Setup
+        public void setUp() {
+            data = MultipartCorpus.multipart(MultipartCorpus.Shape.FORM_FIELDS, MultipartCorpus.Content.TEXT);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Uploads {
+        @Param({"MIXED", "LARGE_FILE"})
+        public MultipartCorpus.Shape shape;
+
+        @Param({"RANDOM", "TEXT", "CRLF_DASHES", "NEAR_BOUNDARY_HEAD", "NEAR_BOUNDARY_TAIL"})
+        public MultipartCorpus.Content content;
+
+        private byte[] data;
+
+        @Setup
+        public void setUp() {
+            data = MultipartCorpus.multipart(shape, content);
+        }
+    }
+
+    @Benchmark
+    public long parseFormFields(FormFields input) throws IOException {
+        return parse(input.data);
+    }
+
+    @Benchmark
+    public long parseUploads(Uploads input) throws IOException {
+        return parse(input.data);
+    }
+
+    private long parse(byte[] data) throws IOException {
+        return drain(StreamingMultipartParser
+                .builder(new ByteArrayInputStream(data))
+                .bufferSize(bufferSize)
+                .reuseParts(reuseParts)
+                .build(), sink);
+    }
+
+    static long drain(StreamingMultipartParser parser, byte[] sink) throws IOException {
+        long total = 0;
+
+        while (parser.hasNext()) {
+            InputStream is = parser.next().getInputStream();
+            for (int n; (n = is.read(sink)) != -1; ) {
+                total += n;
+            }
+        }
+
+        return total;
+    }
+}
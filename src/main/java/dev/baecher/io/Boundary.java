@@ -0,0 +1,75 @@
+package dev.baecher.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A boundary together with its prepared search, so that it can be switched to
+ * repeatedly on a {@link BoundaryInputStream} without rebuilding any tables.
+ */
+public final class Boundary {
+    // Below this length Boyer-Moore cannot skip far enough to beat a word-wise scan.
+    private static final int MIN_BOYER_MOORE_LENGTH = 16;
+
+    private final byte[] bytes;
+    private final BoundarySearch search;
+    private final int[] fallback;
+
+    public Boundary(byte[] b) {
+        this(b, null);
+    }
+
+    public Boundary(byte[] b, BoundarySearch.Factory searchFactory) {
+        if (b == null) {
+            throw new IllegalArgumentException("boundary must not be null");
+        }
+
+        if (b.length == 0) {
+            throw new IllegalArgumentException("boundary must have non-zero length");
+        }
+
+        bytes = b.clone();
+        fallback = KmpSearch.fallbackTable(bytes);
+        search = (searchFactory == null ? defaultSearchFactory(bytes.length) : searchFactory).create(bytes);
+    }
+
+    private static BoundarySearch.Factory defaultSearchFactory(int length) {
+        return length < MIN_BOYER_MOORE_LENGTH ? BoundarySearch.SWAR : BoundarySearch.BOYER_MOORE;
+    }
+
+    public int length() {
+        return bytes.length;
+    }
+
+    public byte[] getBytes() {
+        return bytes.clone();
+    }
+
+    /**
+     * Returns the index of the first occurrence of this boundary that lies entirely
+     * within {@code b[from, to)}, or -1 if there is none.
+     */
+    public int indexOf(byte[] b, int from, int to) {
+        return search.indexOf(b, from, to);
+    }
+
+    /**
+     * Like {@link #indexOf(byte[], int, int)} but searches a (possibly direct or mapped)
+     * buffer by absolute index, ignoring its position and limit.
+     */
+    public int indexOf(ByteBuffer b, int from, int to) {
+        return search.indexOf(b, from, to);
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * Steps the matching automaton: given that the last {@code matched} bytes seen are a
+     * prefix of this boundary, returns the length of the matched prefix after the next byte.
+     * A result equal to the length of the boundary is a complete match.
+     */
+    int advance(int matched, byte b) {
+        return KmpSearch.advance(bytes, fallback, matched, b);
+    }
+}
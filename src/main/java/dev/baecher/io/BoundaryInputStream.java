@@ -2,26 +2,187 @@ package dev.baecher.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 
 public class BoundaryInputStream extends InputStream {
-    private final InputStream source;
-    private final byte[] buffer;
+    private static final byte[] EMPTY = new byte[0];
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final Source source;
+    private final BufferPool bufferPool;
+    private final boolean lowLatency;
+    private final Listener listener;
+    private final int minBufferSize;
+    private final int maxBufferSize;
+    private final boolean shrinkBuffer;
+    private long growthMark;
+    // The buffer is either a heap array or, for channel sources, direct memory that the
+    // channel reads into without the JDK copying through a temporary direct buffer
+    private final boolean direct;
+    private byte[] buffer;
+    private ByteBuffer directBuffer;
+    private ByteBuffer directView;
+    private byte[] scratch;
+    private int capacity;
     private int bufferOffset;
     private int validLength;
+    private long position;
+    private boolean sourceExhausted;
     private final byte[] singleByteBuffer = new byte[1];
 
-    private byte[] boundary;
-    private int[] boundaryByteTable;
-    private int[] boundaryOffsetTable;
+    private final BoundarySearch.Factory searchFactory;
+    private Boundary boundary;
+    private byte[] seam = new byte[0];
+    private Observer observer;
+
+    // One scan per pushed boundary, the last one being for the current boundary. Reads stop
+    // at whichever of them comes first.
+    private Scan[] scans = {new Scan()};
+    private int depth;
+    private Scan scan = scans[0];
+
+    /**
+     * Receives events about reading from the source and searching for the boundary, for
+     * example to collect metrics. All methods do nothing by default.
+     */
+    public interface Listener {
+        /**
+         * Called after every read from the source with the number of bytes read, or -1 at
+         * the end of the source.
+         */
+        default void sourceRead(int bytesRead) {
+        }
+
+        /**
+         * Called after data has been added to the buffer, which may have taken several
+         * reads from the source.
+         */
+        default void refilled(int bytes) {
+        }
+
+        /**
+         * Called after the buffered data has been searched for the boundary.
+         */
+        default void searched(int bytes, boolean found) {
+        }
+
+        /**
+         * Called after the buffer has grown or shrunk to the given size.
+         */
+        default void resized(int size) {
+        }
+
+        Listener NONE = new Listener() {
+        };
+    }
+
+    /**
+     * Sees data as it is consumed, straight from the internal buffer.
+     */
+    public interface Observer {
+        /**
+         * Called with consumed bytes. The array must not be modified or kept.
+         */
+        void consumed(byte[] b, int off, int len);
+
+        /**
+         * Called instead of {@link #consumed(byte[], int, int)} with the remaining bytes of
+         * the buffer when it is direct. The buffer must not be kept. Copies into an array
+         * by default.
+         */
+        default void consumed(ByteBuffer b) {
+            byte[] copy = new byte[b.remaining()];
+            b.get(copy);
+            consumed(copy, 0, copy.length);
+        }
+    }
+
+    /**
+     * Converts data on its way out of the buffer, such as a transfer encoding, so that it is
+     * decoded straight into the caller's array. Implementations keep whatever state they need
+     * between calls, for example incomplete input sequences or output that did not fit.
+     */
+    public interface Decoder {
+        /**
+         * Decodes input from {@code src[srcOff, srcOff + srcLen)} into
+         * {@code dst[dstOff, dstOff + dstLen)} and returns the number of input bytes used.
+         * Must make progress, that is use input or produce output, whenever both ranges are
+         * non-empty.
+         */
+        int decode(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen);
+
+        /**
+         * Returns the number of bytes written by the last call to {@link #decode}.
+         */
+        int decodedLength();
+
+        /**
+         * Called at the boundary or the end of the stream to write any remaining output.
+         * Returns the number of bytes written, 0 once there is nothing left.
+         */
+        int finish(byte[] dst, int off, int len);
+    }
+
+    private interface Source {
+        int read(byte[] b, int off, int len) throws IOException;
+
+        default int read(ByteBuffer b, int off, int len) throws IOException {
+            throw new UnsupportedOperationException("only channels read into direct buffers");
+        }
+    }
+
+    private static class ChannelSource implements Source {
+        private final ReadableByteChannel channel;
+        private ByteBuffer view;
+        private ByteBuffer directBuffer;
+
+        private ChannelSource(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (view == null || view.array() != b) {
+                view = ByteBuffer.wrap(b);
+            }
+
+            view.limit(off + len).position(off);
+            return channel.read(view);
+        }
+
+        @Override
+        public int read(ByteBuffer b, int off, int len) throws IOException {
+            if (directBuffer != b) {
+                directBuffer = b;
+                view = b.duplicate();
+            }
+
+            view.limit(off + len).position(off);
+            return channel.read(view);
+        }
+    }
 
     public static class Builder {
-        private final InputStream source;
+        private final Source source;
         private int bufferSize = 1 << 14;
-        private byte[] boundary;
+        private int maxBufferSize;
+        private boolean shrinkBuffer;
+        private byte[] boundaryBytes;
+        private Boundary boundary;
+        private BoundarySearch.Factory searchFactory;
+        private BufferPool bufferPool = BufferPool.NONE;
+        private boolean lowLatency;
+        private boolean directBuffer;
+        private Listener listener = Listener.NONE;
 
-        private Builder(InputStream source) {
+        private Builder(Source source) {
             this.source = source;
+            directBuffer = source instanceof ChannelSource;
         }
 
         public Builder bufferSize(int bufferSize) {
@@ -29,27 +190,129 @@ public class BoundaryInputStream extends InputStream {
             return this;
         }
 
+        /**
+         * Lets the buffer grow from its initial size up to this size, doubling every time
+         * a full buffer's worth of data has been consumed without reaching the boundary.
+         * Defaults to the initial size, which keeps the buffer fixed.
+         */
+        public Builder maxBufferSize(int maxBufferSize) {
+            this.maxBufferSize = maxBufferSize;
+            return this;
+        }
+
+        /**
+         * When enabled, a grown buffer is halved again for as long as the buffered data fits
+         * whenever a boundary is skipped, down to the initial size.
+         */
+        public Builder shrinkBuffer(boolean shrinkBuffer) {
+            this.shrinkBuffer = shrinkBuffer;
+            return this;
+        }
+
         public Builder boundary(byte[] boundary) {
+            this.boundaryBytes = boundary;
+            this.boundary = null;
+            return this;
+        }
+
+        public Builder boundary(Boundary boundary) {
             this.boundary = boundary;
+            this.boundaryBytes = null;
+            return this;
+        }
+
+        /**
+         * Sets the search used for boundaries given as byte arrays. Boundaries passed as
+         * {@link Boundary} instances bring their own.
+         */
+        public Builder searchFactory(BoundarySearch.Factory searchFactory) {
+            this.searchFactory = searchFactory;
+            return this;
+        }
+
+        /**
+         * Sets the pool that the buffer is taken from. It is handed back when the stream
+         * is closed.
+         */
+        public Builder bufferPool(BufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+            return this;
+        }
+
+        /**
+         * When enabled, the source is only read when the buffered data does not suffice,
+         * and then with a single read call instead of until the buffer is full. Reads return
+         * as soon as some data is known not to belong to the boundary, so latency no longer
+         * depends on the buffer size, at the cost of more and smaller reads from the source.
+         */
+        public Builder lowLatency(boolean lowLatency) {
+            this.lowLatency = lowLatency;
+            return this;
+        }
+
+        public Builder listener(Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Whether the buffer is direct memory taken from {@link BufferPool#acquireDirect},
+         * so that the channel reads straight into it. Only for channel sources, where it is
+         * the default. Decoding and writing to an {@link OutputStream} then go through a
+         * small heap array.
+         */
+        public Builder directBuffer(boolean directBuffer) {
+            this.directBuffer = directBuffer;
             return this;
         }
 
         public BoundaryInputStream build() {
-            return new BoundaryInputStream(source, bufferSize, boundary);
+            if (maxBufferSize != 0 && maxBufferSize < bufferSize) {
+                throw new IllegalArgumentException("maximum buffer size must not be smaller than buffer size");
+            }
+
+            if (directBuffer && !(source instanceof ChannelSource)) {
+                throw new IllegalArgumentException("direct buffers need a channel source");
+            }
+
+            BoundaryInputStream stream = new BoundaryInputStream(this);
+            if (boundary != null) {
+                stream.setBoundary(boundary);
+            } else if (boundaryBytes != null) {
+                stream.setBoundary(boundaryBytes);
+            }
+            return stream;
         }
     }
 
     public static Builder builder(InputStream source) {
-        return new Builder(source);
+        return new Builder(source::read);
     }
 
-    private BoundaryInputStream(InputStream is, int bufferSize, byte[] boundary) {
-        source = is;
-        buffer = new byte[bufferSize];
-
-        if (boundary != null) {
-            setBoundary(boundary);
+    /**
+     * Reads from a channel straight into the internal buffer, without an intermediate
+     * stream. The buffer is direct unless configured otherwise. The channel must be in
+     * blocking mode.
+     */
+    public static Builder builder(ReadableByteChannel source) {
+        if (source instanceof SelectableChannel && !((SelectableChannel) source).isBlocking()) {
+            throw new IllegalArgumentException("channel must be in blocking mode");
         }
+
+        return new Builder(new ChannelSource(source));
+    }
+
+    private BoundaryInputStream(Builder builder) {
+        source = builder.source;
+        bufferPool = builder.bufferPool;
+        lowLatency = builder.lowLatency;
+        listener = builder.listener;
+        minBufferSize = builder.bufferSize;
+        maxBufferSize = Math.max(builder.bufferSize, builder.maxBufferSize);
+        shrinkBuffer = builder.shrinkBuffer;
+        direct = builder.directBuffer;
+        allocate(builder.bufferSize);
+        searchFactory = builder.searchFactory;
     }
 
     public void setBoundary(byte[] b) {
@@ -57,21 +320,146 @@ public class BoundaryInputStream extends InputStream {
             throw new IllegalArgumentException("boundary must not be null, use clearBoundary() to unset");
         }
 
-        if (b.length == 0) {
-            throw new IllegalArgumentException("boundary must have non-zero length");
+        setBoundary(new Boundary(b, searchFactory));
+    }
+
+    public void setBoundary(Boundary b) {
+        if (b == null) {
+            throw new IllegalArgumentException("boundary must not be null, use clearBoundary() to unset");
         }
 
-        if (b.length > buffer.length) {
+        if (b.length() > capacity) {
             throw new IllegalArgumentException("boundary is too large for buffer");
         }
 
-        boundary = b.clone();
-        boundaryByteTable = byteTable(boundary);
-        boundaryOffsetTable = offsetTable(boundary);
+        boundary = b;
+        scan.reset(b);
+        growthMark = position;
+        if (seam.length < 2 * (b.length() - 1)) {
+            seam = new byte[2 * (b.length() - 1)];
+        }
     }
 
     public void clearBoundary() {
         boundary = null;
+        scan.reset(null);
+        growthMark = position;
+    }
+
+    /**
+     * Makes the given boundary the current one while reads keep stopping at the previous
+     * one as well, for data that is nested inside the region the previous boundary ends.
+     * All boundaries are searched as the data comes in. Skipping and setting boundaries
+     * only affect the current one until {@link #popBoundary()} is called.
+     */
+    public void pushBoundary(Boundary b) {
+        if (boundary == null) {
+            throw new IllegalStateException("no boundary to nest in");
+        }
+
+        if (++depth == scans.length) {
+            scans = Arrays.copyOf(scans, 2 * scans.length);
+        }
+        if (scans[depth] == null) {
+            scans[depth] = new Scan();
+        }
+        scan = scans[depth];
+
+        setBoundary(b);
+    }
+
+    /**
+     * Drops the current boundary and makes the one that was current before the matching
+     * {@link #pushBoundary(Boundary)} current again, keeping how far it has been searched.
+     */
+    public void popBoundary() {
+        if (depth == 0) {
+            throw new IllegalStateException("no boundary has been pushed");
+        }
+
+        scan.reset(null);
+        scan = scans[--depth];
+        boundary = scan.boundary;
+        growthMark = position;
+    }
+
+    /**
+     * Sets an observer that is passed all data that is read, transferred or skipped from
+     * now on, for example to compute a checksum without another pass over the data.
+     * Boundaries consumed by {@link #skipBoundary()} are not passed on. Use null to remove.
+     */
+    public void setObserver(Observer observer) {
+        this.observer = observer;
+    }
+
+    /**
+     * Returns the number of bytes consumed so far, including skipped boundaries.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the current size of the buffer, which only changes if it may grow, or 0 once
+     * the stream is closed.
+     */
+    public int getBufferSize() {
+        return capacity;
+    }
+
+    /**
+     * Tests whether the stream continues with the given bytes, without consuming them.
+     * Returns false if the source ends before enough bytes are available.
+     */
+    public boolean startsWith(byte[] b) throws IOException {
+        ensureOpen();
+
+        if (b.length > capacity) {
+            throw new IllegalArgumentException("prefix is too large for buffer");
+        }
+
+        refillBuffer();
+        while (validLength < b.length && !sourceExhausted) {
+            readOnce();
+        }
+
+        if (validLength < b.length) {
+            return false;
+        }
+
+        for (int i = 0; i < b.length; ++i) {
+            if (b[i] != byteAt((bufferOffset + i) % capacity)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Consumes the current boundary if the stream is positioned right at it, which is
+     * the case when a read returned -1 because the boundary was hit. Returns false if
+     * the stream ended instead, or a pushed boundary comes first.
+     */
+    public boolean skipBoundary() throws IOException {
+        if (boundary == null || !startsWith(boundary.bytes()) || !isEnclosed(boundary.length())) {
+            return false;
+        }
+
+        advance(boundary.length());
+        growthMark = position;
+
+        if (shrinkBuffer && capacity > minBufferSize) {
+            int size = capacity;
+            while (size / 2 >= minBufferSize && validLength <= size / 2) {
+                size /= 2;
+            }
+            if (size < capacity) {
+                resize(size);
+            }
+        }
+
+        return true;
     }
 
     @Override
@@ -97,107 +485,349 @@ public class BoundaryInputStream extends InputStream {
             return -1;
         }
 
-        int rightLength = Math.min(length, buffer.length - bufferOffset);
+        int rightLength = Math.min(length, capacity - bufferOffset);
         int leftLength = length - rightLength;
 
-        System.arraycopy(buffer, bufferOffset, b, off, rightLength);
-        System.arraycopy(buffer, 0, b, off + rightLength, leftLength);
+        copyOut(bufferOffset, b, off, rightLength);
+        copyOut(0, b, off + rightLength, leftLength);
 
-        bufferOffset = (bufferOffset + length) % buffer.length;
-        validLength -= length;
+        consume(length);
 
         return length;
     }
 
-    private int readableLength(int requestedReadLength) {
-        if (boundary == null) {
-            return Math.min(requestedReadLength, validLength);
+    /**
+     * Returns the number of bytes before the boundary that are already buffered and can be
+     * read without blocking.
+     */
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+
+        return Math.max(0, freeLength(Integer.MAX_VALUE));
+    }
+
+    /**
+     * Skips up to {@code n} bytes before the boundary by moving past them in the buffer.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        long total = 0;
+
+        while (total < n) {
+            refillBuffer();
+
+            int length = readableLength((int) Math.min(n - total, capacity));
+            if (length == 0) {
+                break;
+            }
+
+            consume(length);
+            total += length;
+        }
+
+        return total;
+    }
+
+    /**
+     * Reads up to {@code len} bytes before the boundary into an array of exactly the right
+     * size if the boundary is already buffered, and grows it only for longer data.
+     */
+    @Override
+    public byte[] readNBytes(int len) throws IOException {
+        if (len < 0) {
+            throw new IllegalArgumentException("len < 0");
+        }
+
+        byte[] result = EMPTY;
+        int total = 0;
+
+        while (total < len) {
+            refillBuffer();
+
+            int length = readableLength(Math.min(len - total, capacity));
+            if (length == 0) {
+                break;
+            }
+
+            if (total + length > result.length) {
+                long grown = Math.max(total + length, Math.min(len, 2L * result.length));
+                result = Arrays.copyOf(result, (int) Math.min(grown, MAX_ARRAY_LENGTH));
+            }
+
+            total += read(result, total, length);
         }
 
-        int searchWindowLength = Math.min(requestedReadLength + boundary.length - 1, validLength);
+        return total == result.length ? result : Arrays.copyOf(result, total);
+    }
 
-        return Math.min(requestedReadLength, boundaryFreeLength(searchWindowLength));
+    @Override
+    public byte[] readAllBytes() throws IOException {
+        return readNBytes(MAX_ARRAY_LENGTH);
     }
 
-    private int boundaryFreeLength(int windowLength) {
-        int index = indexOfBoundary(windowLength);
-        if (index != -1) {
-            return index;
+    /**
+     * Like {@link #read(byte[], int, int)} but copies into a (possibly direct) buffer.
+     */
+    public int read(ByteBuffer dst) throws IOException {
+        if (!dst.hasRemaining()) {
+            return 0;
         }
 
-        if (validLength < buffer.length) {
-            // Source is exhausted and no boundary found, so we
-            // can safely release all bytes.
-            return windowLength;
+        refillBuffer();
+
+        int length = readableLength(dst.remaining());
+        if (length == 0) {
+            return -1;
         }
 
-        // Must withhold some bytes because there could be a
-        // prefix of the boundary in them and there is still
-        // more data to be read from the source.
-        return windowLength - boundary.length + 1;
+        int rightLength = Math.min(length, capacity - bufferOffset);
+
+        if (direct) {
+            dst.put(view(bufferOffset, rightLength));
+            dst.put(view(0, length - rightLength));
+        } else {
+            dst.put(buffer, bufferOffset, rightLength);
+            dst.put(buffer, 0, length - rightLength);
+        }
+
+        consume(length);
+
+        return length;
     }
 
-    private void refillBuffer() throws IOException {
-        int offset = (bufferOffset + validLength) % buffer.length;
-        int length = buffer.length - validLength;
-        int rightLength = Math.min(length, buffer.length - offset);
-        int leftLength = length - rightLength;
-        int bytesRead = 0;
+    /**
+     * Like {@link #read(byte[], int, int)} but passes the data through a decoder on the way,
+     * which reads it directly from the internal buffer. Returns the number of decoded bytes,
+     * or -1 once the decoder has nothing left at the boundary or the end of the stream.
+     */
+    public int read(Decoder decoder, byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (true) {
+            int length = contiguousReadableLength(capacity);
+            if (length == 0) {
+                int decodedLength = decoder.finish(b, off, len);
+                return decodedLength > 0 ? decodedLength : -1;
+            }
+
+            if (direct) {
+                // Copies no more than the decoder can possibly use
+                length = Math.min(length, scratch().length);
+                copyOut(bufferOffset, scratch, 0, length);
+                consume(decoder.decode(scratch, 0, length, b, off, len));
+            } else {
+                consume(decoder.decode(buffer, bufferOffset, length, b, off, len));
+            }
 
-        bytesRead += source.readNBytes(buffer, offset, rightLength);
-        bytesRead += source.readNBytes(buffer, 0, leftLength);
+            // Input such as line breaks or part of a sequence may not produce anything
+            if (decoder.decodedLength() > 0) {
+                return decoder.decodedLength();
+            }
+        }
+    }
+
+    /**
+     * Consumes up to {@code maxLength} bytes and returns them as a read-only view into
+     * the internal buffer, without copying. The view is only valid until the next
+     * operation on this stream. Returns null when the boundary or the end of the stream
+     * is hit.
+     */
+    public ByteBuffer readBuffer(int maxLength) throws IOException {
+        if (maxLength <= 0) {
+            throw new IllegalArgumentException("maximum length must be positive");
+        }
 
-        validLength += bytesRead;
+        int length = contiguousReadableLength(maxLength);
+        if (length == 0) {
+            return null;
+        }
+
+        ByteBuffer view = direct
+                ? directBuffer.duplicate().position(bufferOffset).limit(bufferOffset + length).slice().asReadOnlyBuffer()
+                : ByteBuffer.wrap(buffer, bufferOffset, length).slice().asReadOnlyBuffer();
+        consume(length);
+
+        return view;
     }
 
-    private int indexOfBoundary(int maxLength) {
-        for (int i = boundary.length - 1, j; i < maxLength; ) {
-            for (j = boundary.length - 1; boundary[j] == buffer[(bufferOffset + i) % buffer.length]; --i, --j) {
-                if (j == 0) {
-                    return i;
-                }
+    /**
+     * Writes everything up to the boundary (or the end of the stream) to the output straight
+     * from the internal buffer.
+     */
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        long total = 0;
+
+        for (int length; (length = contiguousReadableLength(direct ? scratch().length : capacity)) > 0; ) {
+            if (direct) {
+                copyOut(bufferOffset, scratch, 0, length);
+                out.write(scratch, 0, length);
+            } else {
+                out.write(buffer, bufferOffset, length);
             }
-            i += Math.max(
-                    boundaryOffsetTable[boundary.length - 1 - j],
-                    boundaryByteTable[buffer[(bufferOffset + i) % buffer.length] & 0xff]);
+            consume(length);
+            total += length;
         }
 
-        return -1;
+        return total;
     }
 
-    private static int[] byteTable(byte[] b) {
-        int[] table = new int[256];
-        Arrays.fill(table, b.length);
+    /**
+     * Like {@link #transferTo(OutputStream)} but writes to a channel, for example a
+     * {@link java.nio.channels.FileChannel}. The channel must be in blocking mode.
+     */
+    public long transferTo(WritableByteChannel out) throws IOException {
+        long total = 0;
 
-        for (int i = 0; i < b.length; ++i) {
-            table[b[i] & 0xff] = b.length - 1 - i;
+        for (int length; (length = contiguousReadableLength(capacity)) > 0; ) {
+            ByteBuffer view = direct ? view(bufferOffset, length) : ByteBuffer.wrap(buffer, bufferOffset, length);
+            while (view.hasRemaining()) {
+                out.write(view);
+            }
+            consume(length);
+            total += length;
         }
 
-        return table;
+        return total;
     }
 
-    private static int[] offsetTable(byte[] b) {
-        int[] table = new int[b.length];
-        int lastPrefixPosition = b.length;
+    /**
+     * Discards everything up to the boundary (or the end of the stream) without copying
+     * it anywhere and returns the number of bytes skipped.
+     */
+    public long skipToBoundary() throws IOException {
+        long total = 0;
+
+        while (true) {
+            refillBuffer();
 
-        for (int i = b.length; i > 0; --i) {
-            if (isPrefix(b, i)) {
-                lastPrefixPosition = i;
+            int length = readableLength(capacity);
+            if (length == 0) {
+                return total;
             }
-            table[b.length - i] = lastPrefixPosition - i + b.length;
+
+            consume(length);
+            total += length;
         }
+    }
+
+    private int contiguousReadableLength(int maxLength) throws IOException {
+        refillBuffer();
+        return Math.min(readableLength(maxLength), capacity - bufferOffset);
+    }
 
-        for (int i = 0; i < b.length - 1; ++i) {
-            int len = suffixLength(b, i);
-            table[len] = b.length - 1 - i + len;
+    private byte byteAt(int index) {
+        return direct ? directBuffer.get(index) : buffer[index];
+    }
+
+    private void copyOut(int index, byte[] b, int off, int len) {
+        if (direct) {
+            view(index, len).get(b, off, len);
+        } else {
+            System.arraycopy(buffer, index, b, off, len);
         }
+    }
 
-        return table;
+    /**
+     * Returns the given range of the direct buffer as its one reusable view, which is only
+     * valid until the next call.
+     */
+    private ByteBuffer view(int index, int length) {
+        directView.limit(index + length).position(index);
+        return directView;
     }
 
-    private static boolean isPrefix(byte[] b, int position) {
-        for (int i = position, j = 0; i < b.length; ++i, ++j) {
-            if (b[i] != b[j]) {
+    /**
+     * Returns the heap array that direct data is copied through where an array is needed.
+     */
+    private byte[] scratch() {
+        if (scratch == null) {
+            scratch = new byte[Math.min(capacity, 0x2000)];
+        }
+
+        return scratch;
+    }
+
+    private void consume(int length) {
+        if (observer != null) {
+            int rightLength = Math.min(length, capacity - bufferOffset);
+            if (direct) {
+                observer.consumed(view(bufferOffset, rightLength));
+                if (length > rightLength) {
+                    observer.consumed(view(0, length - rightLength));
+                }
+            } else {
+                observer.consumed(buffer, bufferOffset, rightLength);
+                if (length > rightLength) {
+                    observer.consumed(buffer, 0, length - rightLength);
+                }
+            }
+        }
+
+        advance(length);
+    }
+
+    private void advance(int length) {
+        bufferOffset = (bufferOffset + length) % capacity;
+        validLength -= length;
+        position += length;
+    }
+
+    /**
+     * Returns how many bytes can be consumed before hitting the boundary, 0 meaning the
+     * boundary or the end of the stream. Reads from the source only if that cannot be
+     * decided from the buffered data, which never happens after a full refill.
+     */
+    private int readableLength(int requestedReadLength) throws IOException {
+        while (true) {
+            int length = freeLength(requestedReadLength);
+
+            if (length != -1) {
+                return length;
+            }
+
+            readOnce();
+        }
+    }
+
+    /**
+     * Like {@link #readableLength(int)} but returns -1 instead of reading from the source.
+     * Pushed boundaries count as well, so the nearest one wins.
+     */
+    private int freeLength(int requestedReadLength) {
+        int length = boundary == null
+                ? unboundedLength(requestedReadLength)
+                : scan.freeLength(requestedReadLength);
+
+        for (int i = depth - 1; i >= 0 && length != 0; --i) {
+            int enclosingLength = scans[i].freeLength(requestedReadLength);
+            if (enclosingLength == 0 || enclosingLength == -1) {
+                length = enclosingLength;
+            } else if (length != -1) {
+                length = Math.min(length, enclosingLength);
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Tests whether the next {@code length} buffered bytes lie before all pushed boundaries.
+     */
+    private boolean isEnclosed(int length) throws IOException {
+        for (int i = 0; i < depth; ++i) {
+            // Withheld bytes are only a prefix of the boundary, or not even that, so more
+            // data is read until the boundary is found or ruled out
+            int enclosingLength;
+            while ((enclosingLength = scans[i].freeLength(length)) < length
+                    && scans[i].matchPosition == -1 && !sourceExhausted && validLength < capacity) {
+                readOnce();
+            }
+
+            if (enclosingLength < length) {
                 return false;
             }
         }
@@ -205,14 +835,303 @@ public class BoundaryInputStream extends InputStream {
         return true;
     }
 
-    private static int suffixLength(byte[] b, int position) {
-        int len = 0;
+    private int unboundedLength(int requestedReadLength) {
+        if (validLength == 0 && !sourceExhausted) {
+            return -1;
+        }
+
+        return Math.min(requestedReadLength, validLength);
+    }
+
+    /**
+     * Returns the buffer to its pool. The underlying source is left open, as it is owned
+     * by whoever passed it in.
+     */
+    @Override
+    public void close() {
+        if (buffer != null) {
+            bufferPool.release(buffer);
+            buffer = null;
+        }
+        if (directBuffer != null) {
+            bufferPool.releaseDirect(directBuffer);
+            directBuffer = null;
+            directView = null;
+        }
+        capacity = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (capacity == 0) {
+            throw new IOException("stream is closed");
+        }
+    }
+
+    private void refillBuffer() throws IOException {
+        ensureOpen();
+        growIfStreaming();
 
-        for (int i = position, j = b.length - 1;
-             i >= 0 && b[i] == b[j]; --i, --j) {
-            len += 1;
+        if (lowLatency) {
+            // Reads happen on demand in readableLength
+            return;
         }
 
-        return len;
+        int offset = (bufferOffset + validLength) % capacity;
+        int length = capacity - validLength;
+        int rightLength = Math.min(length, capacity - offset);
+        int leftLength = length - rightLength;
+
+        int bytesRead = readFully(offset, rightLength) + readFully(0, leftLength);
+        if (bytesRead > 0) {
+            validLength += bytesRead;
+            listener.refilled(bytesRead);
+        }
+    }
+
+    /**
+     * Doubles the buffer, up to the maximum size, once a full buffer's worth of data has
+     * been consumed without reaching the boundary.
+     */
+    private void growIfStreaming() {
+        if (capacity < maxBufferSize && position - growthMark >= capacity) {
+            resize((int) Math.min(maxBufferSize, 2L * capacity));
+        }
+    }
+
+    /**
+     * Moves the buffered data into a buffer of the given size, which must be large enough,
+     * starting at offset 0.
+     */
+    private void resize(int size) {
+        int rightLength = Math.min(validLength, capacity - bufferOffset);
+
+        if (direct) {
+            ByteBuffer resized = bufferPool.acquireDirect(size);
+            resized.put(view(bufferOffset, rightLength)).put(view(0, validLength - rightLength)).clear();
+            bufferPool.releaseDirect(directBuffer);
+            directBuffer = resized;
+            directView = resized.duplicate();
+        } else {
+            byte[] resized = bufferPool.acquire(size);
+            System.arraycopy(buffer, bufferOffset, resized, 0, rightLength);
+            System.arraycopy(buffer, 0, resized, rightLength, validLength - rightLength);
+            bufferPool.release(buffer);
+            buffer = resized;
+        }
+
+        capacity = size;
+        bufferOffset = 0;
+        growthMark = position;
+        listener.resized(size);
+    }
+
+    private void allocate(int size) {
+        if (direct) {
+            directBuffer = bufferPool.acquireDirect(size);
+            directView = directBuffer.duplicate();
+        } else {
+            buffer = bufferPool.acquire(size);
+        }
+        capacity = size;
+    }
+
+    private int readSource(int offset, int length) throws IOException {
+        return direct ? source.read(directBuffer, offset, length) : source.read(buffer, offset, length);
+    }
+
+    private void readOnce() throws IOException {
+        int offset = (bufferOffset + validLength) % capacity;
+        int length = Math.min(capacity - validLength, capacity - offset);
+
+        int bytesRead = readSource(offset, length);
+        listener.sourceRead(bytesRead);
+        if (bytesRead < 0) {
+            sourceExhausted = true;
+        } else if (bytesRead > 0) {
+            validLength += bytesRead;
+            listener.refilled(bytesRead);
+        }
+    }
+
+    private int readFully(int offset, int length) throws IOException {
+        int total = 0;
+
+        while (total < length && !sourceExhausted) {
+            int bytesRead = readSource(offset + total, length - total);
+            listener.sourceRead(bytesRead);
+            if (bytesRead < 0) {
+                sourceExhausted = true;
+            } else {
+                total += bytesRead;
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Search progress for one boundary, kept across reads and refills so that buffered
+     * data is searched only once. No occurrence starts before scannedUntil minus matched,
+     * the length of the boundary prefix that ends at scannedUntil, or at most the boundary
+     * length minus one if matchedExact is false. An occurrence that has been found is
+     * remembered until it is consumed.
+     */
+    private class Scan {
+        private Boundary boundary;
+        private long scannedUntil;
+        private int matched;
+        private boolean matchedExact = true;
+        private long matchPosition = -1;
+
+        private void reset(Boundary b) {
+            boundary = b;
+            reset();
+        }
+
+        private void reset() {
+            scannedUntil = position;
+            matched = 0;
+            matchedExact = true;
+            matchPosition = -1;
+        }
+
+        private int freeLength(int requestedReadLength) {
+            if (matchPosition == -1 ? scannedUntil - matched < position : matchPosition < position) {
+                // The boundary has been skipped
+                reset();
+            }
+
+            if (matchPosition == -1) {
+                search();
+            }
+
+            if (matchPosition != -1) {
+                return Math.min(requestedReadLength, (int) (matchPosition - position));
+            }
+
+            // Bytes that could be the start of the boundary are withheld while there is still
+            // more data to be read from the source
+            int length = (int) (scannedUntil - matched - position);
+            if (length > 0) {
+                return Math.min(requestedReadLength, length);
+            }
+
+            return sourceExhausted ? 0 : -1;
+        }
+
+        /**
+         * Searches the data that was added since the last search. A few new bytes are fed to
+         * the boundary's matching automaton, continuing where the last search stopped. Longer
+         * stretches are searched with the boundary's search, which only has to go back as far
+         * as the prefix matched so far. Either way, the work is linear in the number of new
+         * bytes, however small the reads and refills are.
+         */
+        private void search() {
+            long validUntil = position + validLength;
+            int newLength = (int) (validUntil - scannedUntil);
+
+            if (newLength > 0 && newLength < boundary.length()) {
+                if (!matchedExact) {
+                    // Paid for by the long stretch searched before
+                    long from = scannedUntil - matched;
+                    matched = 0;
+                    matchedExact = true;
+                    feed(from, scannedUntil);
+                }
+
+                feed(scannedUntil, validUntil);
+                listener.searched(newLength, matchPosition != -1);
+            } else if (newLength > 0) {
+                int from = (int) (scannedUntil - matched - position);
+                int index = indexOf(from, validLength);
+                listener.searched(validLength - from, index != -1);
+
+                if (index != -1) {
+                    matchPosition = position + index;
+                } else {
+                    // Whether the tail is a prefix of the boundary is only worked out when
+                    // the next search needs to know
+                    matched = Math.min(boundary.length() - 1, validLength);
+                    matchedExact = false;
+                }
+            }
+
+            scannedUntil = validUntil;
+            if (sourceExhausted) {
+                // A prefix at the very end can no longer be completed
+                matched = 0;
+                matchedExact = true;
+            }
+        }
+
+        /**
+         * Runs the boundary's matching automaton over the buffered bytes at the given
+         * positions, starting from the current state.
+         */
+        private void feed(long from, long until) {
+            byte first = boundary.bytes()[0];
+            int i = (int) ((bufferOffset + from - position) % capacity);
+
+            for (long p = from; p < until; ++p) {
+                byte b = byteAt(i);
+                if (matched > 0 || b == first) {
+                    matched = boundary.advance(matched, b);
+                    if (matched == boundary.length()) {
+                        matchPosition = p - matched + 1;
+                        return;
+                    }
+                }
+
+                if (++i == capacity) {
+                    i = 0;
+                }
+            }
+        }
+
+        /**
+         * Returns the index relative to the buffer offset of the first occurrence of the
+         * boundary within the relative range {@code [from, to)}, or -1 if there is none.
+         */
+        private int indexOf(int from, int to) {
+            int start = bufferOffset + from;
+            int end = bufferOffset + to;
+
+            if (start >= capacity) {
+                int index = indexIn(start - capacity, end - capacity);
+                return index == -1 ? -1 : index + capacity - bufferOffset;
+            }
+
+            if (end <= capacity) {
+                int index = indexIn(start, end);
+                return index == -1 ? -1 : index - bufferOffset;
+            }
+
+            int rightLength = capacity - start;
+            int leftLength = end - capacity;
+
+            int index = indexIn(start, capacity);
+            if (index != -1) {
+                return index - bufferOffset;
+            }
+
+            // Occurrences that wrap around the end of the buffer are searched in a
+            // copy of the bytes on either side of the seam.
+            int seamRightLength = Math.min(boundary.length() - 1, rightLength);
+            int seamLeftLength = Math.min(boundary.length() - 1, leftLength);
+            copyOut(capacity - seamRightLength, seam, 0, seamRightLength);
+            copyOut(0, seam, seamRightLength, seamLeftLength);
+
+            index = boundary.indexOf(seam, 0, seamRightLength + seamLeftLength);
+            if (index != -1) {
+                return capacity - seamRightLength + index - bufferOffset;
+            }
+
+            index = indexIn(0, leftLength);
+            return index == -1 ? -1 : index + capacity - bufferOffset;
+        }
+
+        private int indexIn(int from, int to) {
+            return direct ? boundary.indexOf(directBuffer, from, to) : boundary.indexOf(buffer, from, to);
+        }
     }
 }
@@ -0,0 +1,41 @@
+package dev.baecher.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Strategy for finding a boundary in a linear region of a byte array.
+ */
+public interface BoundarySearch {
+    /**
+     * Returns the index of the first occurrence of the pattern that lies entirely
+     * within {@code b[from, to)}, or -1 if there is none.
+     */
+    int indexOf(byte[] b, int from, int to);
+
+    /**
+     * Like {@link #indexOf(byte[], int, int)} but searches a (possibly direct or mapped)
+     * buffer by absolute index, ignoring its position and limit. The default implementation
+     * copies the range to an array; the built-in searches read the buffer directly.
+     */
+    default int indexOf(ByteBuffer b, int from, int to) {
+        byte[] copy = new byte[Math.max(0, to - from)];
+        b.duplicate().position(from).get(copy);
+
+        int index = indexOf(copy, 0, copy.length);
+        return index == -1 ? -1 : from + index;
+    }
+
+    interface Factory {
+        BoundarySearch create(byte[] pattern);
+    }
+
+    Factory BOYER_MOORE = BoyerMooreSearch::new;
+
+    Factory SWAR = SwarSearch::new;
+
+    /**
+     * Linear time in the worst case. The other searches switch to it by themselves when
+     * they detect that they are degrading, so it rarely needs to be chosen explicitly.
+     */
+    Factory KMP = KmpSearch::new;
+}
@@ -0,0 +1,119 @@
+package dev.baecher.io;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Boyer-Moore search, which skips ahead by up to the pattern length after a mismatch. Input
+ * that makes it compare more than {@link #MAX_COMPARISONS_PER_BYTE} bytes per byte of
+ * progress, such as repeated near matches of a periodic pattern, is searched with
+ * {@link KmpSearch} from that point on.
+ */
+class BoyerMooreSearch implements BoundarySearch {
+    private static final int MAX_COMPARISONS_PER_BYTE = 2;
+
+    private final byte[] pattern;
+    private final int[] byteTable;
+    private final int[] offsetTable;
+    private final KmpSearch fallback;
+
+    BoyerMooreSearch(byte[] pattern) {
+        this.pattern = pattern.clone();
+        byteTable = byteTable(pattern);
+        offsetTable = offsetTable(pattern);
+        fallback = new KmpSearch(pattern);
+    }
+
+    @Override
+    public int indexOf(byte[] b, int from, int to) {
+        long comparisons = 0;
+
+        for (int i = from + pattern.length - 1, j; i < to; ) {
+            for (j = pattern.length - 1; pattern[j] == b[i]; --i, --j) {
+                if (j == 0) {
+                    return i;
+                }
+            }
+            comparisons += pattern.length - j;
+            i += Math.max(offsetTable[pattern.length - 1 - j], byteTable[b[i] & 0xff]);
+
+            if (comparisons > MAX_COMPARISONS_PER_BYTE * (long) (i - from)) {
+                return fallback.indexOf(b, i - pattern.length + 1, to);
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int indexOf(ByteBuffer b, int from, int to) {
+        long comparisons = 0;
+
+        for (int i = from + pattern.length - 1, j; i < to; ) {
+            for (j = pattern.length - 1; pattern[j] == b.get(i); --i, --j) {
+                if (j == 0) {
+                    return i;
+                }
+            }
+            comparisons += pattern.length - j;
+            i += Math.max(offsetTable[pattern.length - 1 - j], byteTable[b.get(i) & 0xff]);
+
+            if (comparisons > MAX_COMPARISONS_PER_BYTE * (long) (i - from)) {
+                return fallback.indexOf(b, i - pattern.length + 1, to);
+            }
+        }
+
+        return -1;
+    }
+
+    private static int[] byteTable(byte[] b) {
+        int[] table = new int[256];
+        Arrays.fill(table, b.length);
+
+        for (int i = 0; i < b.length; ++i) {
+            table[b[i] & 0xff] = b.length - 1 - i;
+        }
+
+        return table;
+    }
+
+    private static int[] offsetTable(byte[] b) {
+        int[] table = new int[b.length];
+        int lastPrefixPosition = b.length;
+
+        for (int i = b.length; i > 0; --i) {
+            if (isPrefix(b, i)) {
+                lastPrefixPosition = i;
+            }
+            table[b.length - i] = lastPrefixPosition - i + b.length;
+        }
+
+        for (int i = 0; i < b.length - 1; ++i) {
+            int len = suffixLength(b, i);
+            table[len] = b.length - 1 - i + len;
+        }
+
+        return table;
+    }
+
+    private static boolean isPrefix(byte[] b, int position) {
+        for (int i = position, j = 0; i < b.length; ++i, ++j) {
+            if (b[i] != b[j]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int suffixLength(byte[] b, int position) {
+        int len = 0;
+
+        for (int i = position, j = b.length - 1;
+             i >= 0 && b[i] == b[j]; --i, --j) {
+            len += 1;
+        }
+
+        return len;
+    }
+}
@@ -0,0 +1,47 @@
+package dev.baecher.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Source of the byte arrays that streams and parsers use as their buffers, so that they
+ * can be reused across instances instead of being allocated for every request.
+ */
+public interface BufferPool {
+    /**
+     * Returns an array of exactly the given length. Its contents are undefined.
+     */
+    byte[] acquire(int size);
+
+    /**
+     * Hands an array back to the pool. It must not be used by the caller afterwards.
+     */
+    void release(byte[] buffer);
+
+    /**
+     * Returns a direct buffer of exactly the given capacity, cleared. Its contents are
+     * undefined. Allocates a new one by default.
+     */
+    default ByteBuffer acquireDirect(int size) {
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * Hands a direct buffer back to the pool. Does nothing by default.
+     */
+    default void releaseDirect(ByteBuffer buffer) {
+    }
+
+    /**
+     * Allocates a fresh array every time and lets released ones be garbage collected.
+     */
+    BufferPool NONE = new BufferPool() {
+        @Override
+        public byte[] acquire(int size) {
+            return new byte[size];
+        }
+
+        @Override
+        public void release(byte[] buffer) {
+        }
+    };
+}
@@ -0,0 +1,74 @@
+package dev.baecher.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Knuth-Morris-Pratt search, which looks at every byte exactly once and never backs up.
+ * Slower than the other searches on typical data, but its running time is linear in the
+ * worst case, so they fall back to it when input is crafted to make them degrade.
+ */
+class KmpSearch implements BoundarySearch {
+    private final byte[] pattern;
+    private final int[] fallback;
+
+    KmpSearch(byte[] pattern) {
+        this.pattern = pattern.clone();
+        fallback = fallbackTable(this.pattern);
+    }
+
+    @Override
+    public int indexOf(byte[] b, int from, int to) {
+        for (int i = from, matched = 0; i < to; ++i) {
+            matched = advance(pattern, fallback, matched, b[i]);
+            if (matched == pattern.length) {
+                return i - pattern.length + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int indexOf(ByteBuffer b, int from, int to) {
+        for (int i = from, matched = 0; i < to; ++i) {
+            matched = advance(pattern, fallback, matched, b.get(i));
+            if (matched == pattern.length) {
+                return i - pattern.length + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    static int advance(byte[] pattern, int[] fallback, int matched, byte b) {
+        if (matched == pattern.length) {
+            matched = fallback[matched - 1];
+        }
+
+        while (matched > 0 && pattern[matched] != b) {
+            matched = fallback[matched - 1];
+        }
+
+        return pattern[matched] == b ? matched + 1 : matched;
+    }
+
+    /**
+     * For every prefix of the pattern, the length of its longest proper prefix that is
+     * also a suffix of it.
+     */
+    static int[] fallbackTable(byte[] pattern) {
+        int[] table = new int[pattern.length];
+
+        for (int i = 1, matched = 0; i < pattern.length; ++i) {
+            while (matched > 0 && pattern[i] != pattern[matched]) {
+                matched = table[matched - 1];
+            }
+            if (pattern[i] == pattern[matched]) {
+                ++matched;
+            }
+            table[i] = matched;
+        }
+
+        return table;
+    }
+}
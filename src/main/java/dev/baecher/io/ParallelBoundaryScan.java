@@ -0,0 +1,146 @@
+package dev.baecher.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds all occurrences of a boundary in a large file or array by splitting it into chunks
+ * that are searched concurrently on a {@link ForkJoinPool}. Neighbouring chunks overlap by
+ * the boundary length minus one, so that occurrences spanning two chunks are found exactly
+ * once, by the chunk they start in.
+ * <p>
+ * Overlapping occurrences are all reported, which cannot happen for multipart delimiters.
+ */
+public final class ParallelBoundaryScan {
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 24;
+
+    private ParallelBoundaryScan() {
+    }
+
+    /**
+     * Returns the ascending file offsets of all occurrences within {@code [from, to)}.
+     * Each chunk is mapped on its own.
+     */
+    public static long[] findAll(FileChannel channel, Boundary boundary, long from, long to,
+                                 ForkJoinPool pool, int chunkSize) throws IOException {
+        checkChunkSize(chunkSize);
+
+        try {
+            return pool.invoke(new Scan(from, to, chunkSize, (start, end) -> {
+                long mapEnd = Math.min(to, end + boundary.length() - 1);
+                MappedByteBuffer chunk;
+                try {
+                    chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, mapEnd - start);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+
+                LongList found = new LongList();
+                int limit = (int) (mapEnd - start);
+                for (int i = boundary.indexOf(chunk, 0, limit); i != -1 && i < end - start;
+                     i = boundary.indexOf(chunk, i + 1, limit)) {
+                    found.add(start + i);
+                }
+
+                return found.toArray();
+            }));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public static long[] findAll(FileChannel channel, Boundary boundary, long from, long to,
+                                 ForkJoinPool pool) throws IOException {
+        return findAll(channel, boundary, from, to, pool, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Returns the ascending indices of all occurrences within {@code b[from, to)}.
+     */
+    public static long[] findAll(byte[] b, Boundary boundary, int from, int to, ForkJoinPool pool, int chunkSize) {
+        checkChunkSize(chunkSize);
+
+        return pool.invoke(new Scan(from, to, chunkSize, (start, end) -> {
+            int limit = (int) Math.min(to, end + boundary.length() - 1);
+
+            LongList found = new LongList();
+            for (int i = boundary.indexOf(b, (int) start, limit); i != -1 && i < end;
+                 i = boundary.indexOf(b, i + 1, limit)) {
+                found.add(i);
+            }
+
+            return found.toArray();
+        }));
+    }
+
+    private static void checkChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+    }
+
+    private interface ChunkSearch {
+        /**
+         * Returns the occurrences starting in {@code [start, end)}. May look past the end by
+         * up to the boundary length minus one.
+         */
+        long[] search(long start, long end);
+    }
+
+    private static class Scan extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final long start;
+        private final long end;
+        private final int chunkSize;
+        private final ChunkSearch search;
+
+        private Scan(long start, long end, int chunkSize, ChunkSearch search) {
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+            this.search = search;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (end - start <= chunkSize) {
+                return start < end ? search.search(start, end) : new long[0];
+            }
+
+            long middle = start + (end - start) / 2;
+            Scan left = new Scan(start, middle, chunkSize, search);
+            Scan right = new Scan(middle, end, chunkSize, search);
+
+            right.fork();
+            long[] leftFound = left.compute();
+            long[] rightFound = right.join();
+
+            long[] found = Arrays.copyOf(leftFound, leftFound.length + rightFound.length);
+            System.arraycopy(rightFound, 0, found, leftFound.length, rightFound.length);
+
+            return found;
+        }
+    }
+
+    private static class LongList {
+        private long[] values = new long[8];
+        private int size;
+
+        private void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            values[size++] = value;
+        }
+
+        private long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package dev.baecher.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded {@link BufferPool} that spreads its buffers over several independently locked
+ * stripes, chosen by thread, to keep contention low. Each stripe keeps at most a fixed
+ * number of buffers; buffers released into a full stripe are dropped.
+ */
+public final class StripedBufferPool implements BufferPool {
+    private final Stripe[] stripes;
+    private final int maxBuffersPerStripe;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder drops = new LongAdder();
+
+    private static class Stripe {
+        private final Map<Integer, ArrayDeque<byte[]>> buffers = new HashMap<>();
+        private final Map<Integer, ArrayDeque<ByteBuffer>> directBuffers = new HashMap<>();
+        private int count;
+    }
+
+    public static class Builder {
+        private int stripes = Runtime.getRuntime().availableProcessors();
+        private int maxBuffersPerStripe = 4;
+
+        private Builder() {
+        }
+
+        public Builder stripes(int stripes) {
+            this.stripes = stripes;
+            return this;
+        }
+
+        public Builder maxBuffersPerStripe(int maxBuffersPerStripe) {
+            this.maxBuffersPerStripe = maxBuffersPerStripe;
+            return this;
+        }
+
+        public StripedBufferPool build() {
+            if (stripes <= 0 || maxBuffersPerStripe < 0) {
+                throw new IllegalArgumentException("stripes must be positive and buffers per stripe non-negative");
+            }
+
+            return new StripedBufferPool(stripes, maxBuffersPerStripe);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private StripedBufferPool(int stripeCount, int maxBuffersPerStripe) {
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.maxBuffersPerStripe = maxBuffersPerStripe;
+    }
+
+    @Override
+    public byte[] acquire(int size) {
+        Stripe stripe = stripe();
+        byte[] buffer;
+
+        synchronized (stripe) {
+            buffer = poll(stripe, stripe.buffers, size);
+        }
+
+        if (buffer == null) {
+            misses.increment();
+            return new byte[size];
+        }
+
+        hits.increment();
+        return buffer;
+    }
+
+    @Override
+    public void release(byte[] buffer) {
+        Stripe stripe = stripe();
+
+        synchronized (stripe) {
+            if (offer(stripe, stripe.buffers, buffer.length, buffer)) {
+                return;
+            }
+        }
+
+        drops.increment();
+    }
+
+    /**
+     * Pools direct buffers separately from arrays, under the same per-stripe limit.
+     */
+    @Override
+    public ByteBuffer acquireDirect(int size) {
+        Stripe stripe = stripe();
+        ByteBuffer buffer;
+
+        synchronized (stripe) {
+            buffer = poll(stripe, stripe.directBuffers, size);
+        }
+
+        if (buffer == null) {
+            misses.increment();
+            return ByteBuffer.allocateDirect(size);
+        }
+
+        hits.increment();
+        return buffer.clear();
+    }
+
+    @Override
+    public void releaseDirect(ByteBuffer buffer) {
+        Stripe stripe = stripe();
+
+        synchronized (stripe) {
+            if (offer(stripe, stripe.directBuffers, buffer.capacity(), buffer)) {
+                return;
+            }
+        }
+
+        drops.increment();
+    }
+
+    private static <T> T poll(Stripe stripe, Map<Integer, ArrayDeque<T>> buffers, int size) {
+        ArrayDeque<T> free = buffers.get(size);
+        T buffer = free == null ? null : free.pollFirst();
+        if (buffer != null) {
+            stripe.count--;
+        }
+
+        return buffer;
+    }
+
+    private <T> boolean offer(Stripe stripe, Map<Integer, ArrayDeque<T>> buffers, int size, T buffer) {
+        if (stripe.count == maxBuffersPerStripe) {
+            return false;
+        }
+
+        buffers.computeIfAbsent(size, ignored -> new ArrayDeque<>()).addFirst(buffer);
+        stripe.count++;
+        return true;
+    }
+
+    private Stripe stripe() {
+        return stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+    }
+
+    /**
+     * Returns the number of acquisitions that were served with a pooled buffer.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of acquisitions that had to allocate a new buffer.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of released buffers that were dropped because their stripe was full.
+     */
+    public long getDrops() {
+        return drops.sum();
+    }
+
+    /**
+     * Returns the number of buffers currently held by the pool.
+     */
+    public int getPooledCount() {
+        int total = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                total += stripe.count;
+            }
+        }
+
+        return total;
+    }
+}
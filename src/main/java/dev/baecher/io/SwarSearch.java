@@ -0,0 +1,140 @@
+package dev.baecher.io;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Scans for the first pattern byte eight bytes at a time ("SIMD within a register")
+ * and only compares the full pattern at candidate positions. Multipart delimiters
+ * start with a CR, which is rare in most bodies, so few candidates need checking. Input
+ * with so many candidates that checking them costs more than {@link #MAX_COMPARISONS_PER_BYTE}
+ * comparisons per byte is searched with {@link KmpSearch} from that point on.
+ */
+class SwarSearch implements BoundarySearch {
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle BUFFER_LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final int MAX_COMPARISONS_PER_BYTE = 2;
+
+    private final byte[] pattern;
+    private final byte first;
+    private final byte last;
+    private final long firstBroadcast;
+    private final KmpSearch fallback;
+
+    SwarSearch(byte[] pattern) {
+        this.pattern = pattern.clone();
+        first = pattern[0];
+        last = pattern[pattern.length - 1];
+        firstBroadcast = (first & 0xffL) * ONES;
+        fallback = new KmpSearch(pattern);
+    }
+
+    @Override
+    public int indexOf(byte[] b, int from, int to) {
+        int lastStart = to - pattern.length;
+        long comparisons = 0;
+
+        for (int i = from; i <= lastStart; ++i) {
+            i = indexOfFirst(b, i, lastStart + 1);
+            if (i < 0) {
+                return -1;
+            }
+
+            if (b[i + pattern.length - 1] == last) {
+                if (Arrays.equals(pattern, 0, pattern.length, b, i, i + pattern.length)) {
+                    return i;
+                }
+
+                comparisons += pattern.length;
+                if (comparisons > MAX_COMPARISONS_PER_BYTE * (long) (i + pattern.length - from)) {
+                    return fallback.indexOf(b, i + 1, to);
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    private int indexOfFirst(byte[] b, int from, int to) {
+        int i = from;
+
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = (long) LONGS.get(b, i) ^ firstBroadcast;
+            // Sets the high bit of every zero byte; the lowest one is always exact.
+            long zeros = (word - ONES) & ~word & HIGHS;
+            if (zeros != 0) {
+                return i + (Long.numberOfTrailingZeros(zeros) >>> 3);
+            }
+        }
+
+        for (; i < to; ++i) {
+            if (b[i] == first) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int indexOf(ByteBuffer b, int from, int to) {
+        int lastStart = to - pattern.length;
+        long comparisons = 0;
+
+        for (int i = from; i <= lastStart; ++i) {
+            i = indexOfFirst(b, i, lastStart + 1);
+            if (i < 0) {
+                return -1;
+            }
+
+            if (b.get(i + pattern.length - 1) == last) {
+                if (matchesAt(b, i)) {
+                    return i;
+                }
+
+                comparisons += pattern.length;
+                if (comparisons > MAX_COMPARISONS_PER_BYTE * (long) (i + pattern.length - from)) {
+                    return fallback.indexOf(b, i + 1, to);
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean matchesAt(ByteBuffer b, int index) {
+        for (int j = 1; j < pattern.length - 1; ++j) {
+            if (b.get(index + j) != pattern[j]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int indexOfFirst(ByteBuffer b, int from, int to) {
+        int i = from;
+
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = (long) BUFFER_LONGS.get(b, i) ^ firstBroadcast;
+            long zeros = (word - ONES) & ~word & HIGHS;
+            if (zeros != 0) {
+                return i + (Long.numberOfTrailingZeros(zeros) >>> 3);
+            }
+        }
+
+        for (; i < to; ++i) {
+            if (b.get(i) == first) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
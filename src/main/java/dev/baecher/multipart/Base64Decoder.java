@@ -0,0 +1,121 @@
+package dev.baecher.multipart;
+
+import dev.baecher.io.BoundaryInputStream;
+
+import java.util.Arrays;
+
+/**
+ * Decodes the base64 transfer encoding of RFC 2045 incrementally. Characters outside the
+ * alphabet, such as line breaks, are ignored as the RFC demands. Missing padding at the end
+ * is tolerated.
+ */
+class Base64Decoder implements BoundaryInputStream.Decoder {
+    private static final int IGNORED = -1;
+    private static final int PADDING = -2;
+    private static final int[] VALUES = new int[256];
+
+    static {
+        Arrays.fill(VALUES, IGNORED);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); ++i) {
+            VALUES[alphabet.charAt(i)] = i;
+        }
+        VALUES['='] = PADDING;
+    }
+
+    // Up to four sextets of the current quantum
+    private int bits;
+    private int sextets;
+    private boolean padded;
+
+    // Bytes of a decoded quantum that did not fit into the destination
+    private int pending;
+    private int pendingIndex;
+    private int pendingEnd;
+
+    private int decodedLength;
+
+    void reset() {
+        bits = 0;
+        sextets = 0;
+        padded = false;
+        pendingIndex = 0;
+        pendingEnd = 0;
+    }
+
+    @Override
+    public int decode(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) {
+        int dstEnd = dstOff + dstLen;
+        int o = drainPending(dst, dstOff, dstEnd);
+
+        int i = srcOff;
+        int srcEnd = srcOff + srcLen;
+        while (i < srcEnd && o < dstEnd) {
+            int value = VALUES[src[i++] & 0xff];
+
+            if (value >= 0) {
+                if (padded) {
+                    throw new IllegalArgumentException("malformed base64 data, characters after padding");
+                }
+
+                bits = bits << 6 | value;
+                if (++sextets == 4) {
+                    o = output(dst, o, dstEnd);
+                }
+            } else if (value == PADDING && !padded) {
+                if (sextets < 2) {
+                    throw new IllegalArgumentException("malformed base64 data, misplaced padding");
+                }
+
+                o = output(dst, o, dstEnd);
+                padded = true;
+            }
+        }
+
+        decodedLength = o - dstOff;
+        return i - srcOff;
+    }
+
+    @Override
+    public int decodedLength() {
+        return decodedLength;
+    }
+
+    @Override
+    public int finish(byte[] dst, int off, int len) {
+        int dstEnd = off + len;
+        int o = drainPending(dst, off, dstEnd);
+
+        if (sextets == 1) {
+            throw new IllegalArgumentException("malformed base64 data, incomplete quantum");
+        }
+
+        if (sextets > 1) {
+            o = output(dst, o, dstEnd);
+        }
+
+        return o - off;
+    }
+
+    /**
+     * Writes the bytes of the current quantum, which may be incomplete at the end of the
+     * data, and keeps those that do not fit for the next call.
+     */
+    private int output(byte[] dst, int o, int dstEnd) {
+        pending = bits << 6 * (4 - sextets);
+        pendingIndex = 0;
+        pendingEnd = sextets - 1;
+        bits = 0;
+        sextets = 0;
+
+        return drainPending(dst, o, dstEnd);
+    }
+
+    private int drainPending(byte[] dst, int o, int dstEnd) {
+        while (pendingIndex < pendingEnd && o < dstEnd) {
+            dst[o++] = (byte) (pending >> 16 - 8 * pendingIndex++);
+        }
+
+        return o;
+    }
+}
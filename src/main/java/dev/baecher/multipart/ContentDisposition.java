@@ -0,0 +1,58 @@
+package dev.baecher.multipart;
+
+import java.util.Map;
+
+/**
+ * A parsed Content-Disposition header value as used in multipart/form-data.
+ * See https://www.rfc-editor.org/rfc/rfc6266 and https://www.rfc-editor.org/rfc/rfc7578.
+ */
+public final class ContentDisposition {
+    private final String type;
+    private final Map<String, String> parameters;
+
+    private ContentDisposition(String type, Map<String, String> parameters) {
+        this.type = type;
+        this.parameters = parameters;
+    }
+
+    public static ContentDisposition parse(String value) {
+        int separator = HeaderParameters.indexOfSeparator(value, 0);
+        if (separator == value.length()) {
+            throw new IllegalArgumentException("malformed content-disposition header value: " + value);
+        }
+
+        return new ContentDisposition(
+                value.substring(0, separator).trim(),
+                HeaderParameters.parse("content-disposition", value, separator));
+    }
+
+    /**
+     * Returns the disposition type, usually {@code form-data}.
+     */
+    public String getType() {
+        return type;
+    }
+
+    public String getName() {
+        return parameters.get("name");
+    }
+
+    /**
+     * Returns the file name, preferring the extended {@code filename*} parameter if present.
+     */
+    public String getFilename() {
+        return parameters.getOrDefault("filename*", parameters.get("filename"));
+    }
+
+    /**
+     * Looks up a parameter by its lower-case name. Values are unquoted, and extended
+     * values with a {@code utf-8''} prefix are percent-decoded.
+     */
+    public String getParameter(String name) {
+        return parameters.get(name);
+    }
+
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+}
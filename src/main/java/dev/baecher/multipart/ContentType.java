@@ -0,0 +1,97 @@
+package dev.baecher.multipart;
+
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A parsed Content-Type header value. See https://www.rfc-editor.org/rfc/rfc2045#section-5.1.
+ */
+public final class ContentType {
+    private final String type;
+    private final String subtype;
+    private final Map<String, String> parameters;
+
+    private ContentType(String type, String subtype, Map<String, String> parameters) {
+        this.type = type;
+        this.subtype = subtype;
+        this.parameters = parameters;
+    }
+
+    public static ContentType parse(String value) {
+        int separator = HeaderParameters.indexOfSeparator(value, 0);
+        String mediaType = value.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+        int slash = mediaType.indexOf('/');
+
+        if (slash <= 0 || slash == mediaType.length() - 1) {
+            throw new IllegalArgumentException("malformed content-type header value: " + value);
+        }
+
+        return new ContentType(
+                mediaType.substring(0, slash).trim(),
+                mediaType.substring(slash + 1).trim(),
+                separator == value.length()
+                        ? Collections.emptyMap()
+                        : HeaderParameters.parse("content-type", value, separator));
+    }
+
+    /**
+     * Returns the lower-case top-level type, for example {@code text}.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Returns the lower-case subtype, for example {@code plain}.
+     */
+    public String getSubtype() {
+        return subtype;
+    }
+
+    /**
+     * Returns type and subtype without parameters, for example {@code text/plain}.
+     */
+    public String getMediaType() {
+        return type + "/" + subtype;
+    }
+
+    public boolean isMultipart() {
+        return type.equals("multipart");
+    }
+
+    /**
+     * Returns the charset parameter, or null if there is none or it names a charset this JVM
+     * does not know.
+     */
+    public Charset getCharset() {
+        String charset = parameters.get("charset");
+        if (charset == null) {
+            return null;
+        }
+
+        try {
+            return Charset.forName(charset);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the boundary parameter of a multipart type, or null if there is none.
+     */
+    public String getBoundary() {
+        return parameters.get("boundary");
+    }
+
+    public String getParameter(String name) {
+        return parameters.get(name);
+    }
+
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+}
@@ -0,0 +1,77 @@
+package dev.baecher.multipart;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parses the {@code ; name=value} parameter lists shared by Content-Disposition and
+ * Content-Type header values.
+ */
+final class HeaderParameters {
+    private static final String MAGIC_UTF8_INDICATOR = "utf-8''";
+
+    private HeaderParameters() {
+    }
+
+    /**
+     * Returns the index of the first semicolon at or after {@code from} that is not inside
+     * a quoted string, or the length of the value if there is none.
+     */
+    static int indexOfSeparator(String value, int from) {
+        boolean quoted = false;
+
+        for (int i = from; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (quoted && c == '\\') {
+                ++i;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ';' && !quoted) {
+                return i;
+            }
+        }
+
+        return value.length();
+    }
+
+    /**
+     * Parses the parameters following the separator at {@code from}. Names are lower-cased.
+     */
+    static Map<String, String> parse(String headerName, String value, int from) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+
+        for (int start = from + 1; start <= value.length(); ) {
+            int end = indexOfSeparator(value, start);
+            String parameter = value.substring(start, end).trim();
+            int equals = parameter.indexOf('=');
+
+            if (equals == -1) {
+                throw new IllegalArgumentException("malformed parameter in " + headerName + " header: " + parameter);
+            }
+
+            parameters.put(
+                    parameter.substring(0, equals).trim().toLowerCase(Locale.ROOT),
+                    decodeValue(parameter.substring(equals + 1).trim()));
+            start = end + 1;
+        }
+
+        return Collections.unmodifiableMap(parameters);
+    }
+
+    private static String decodeValue(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+
+        // https://www.rfc-editor.org/rfc/rfc8187
+        if (value.regionMatches(true, 0, MAGIC_UTF8_INDICATOR, 0, MAGIC_UTF8_INDICATOR.length())) {
+            return URLDecoder.decode(value.substring(MAGIC_UTF8_INDICATOR.length()), StandardCharsets.UTF_8);
+        }
+
+        return value;
+    }
+}
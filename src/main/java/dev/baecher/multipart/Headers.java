@@ -1,25 +1,16 @@
 package dev.baecher.multipart;
 
-import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class Headers {
+    private static final String CONTENT_DISPOSITION = "content-disposition";
+    private static final String CONTENT_TYPE = "content-type";
+
     private static class Header {
         private final String name;
         private final String value;
 
-        public static Header parseLine(String s) {
-            String[] parts = s.split("\\s*:\\s*", 2);
-
-            if (parts.length != 2) {
-                throw new IllegalArgumentException("malformed header line: " + s);
-            }
-
-            return new Header(parts[0], parts[1]);
-        }
-
         private Header(String name, String value) {
             this.name = name;
             this.value = value;
@@ -34,95 +25,262 @@ public class Headers {
         }
     }
 
-    private final List<Header> headers;
+    // The header block is only scanned for the positions of names and values,
+    // four offsets per header. Strings are decoded when asked for.
+    private static final int NAME_START = 0;
+    private static final int NAME_END = 1;
+    private static final int VALUE_START = 2;
+    private static final int VALUE_END = 3;
+    private static final int FIELDS = 4;
+
+    private byte[] data;
+    private int length;
+    private int[] offsets;
+    private int count;
+    private int contentDispositionIndex = -1;
+    private int contentTypeIndex = -1;
+    private String[] values;
+    private List<Header> headers;
+    private ContentDisposition contentDisposition;
+    private ContentType contentType;
+
+    private Headers(byte[] data, int length) {
+        offsets = new int[FIELDS * 4];
+        reset(data, length);
+    }
+
+    public static Headers fromBytes(byte[] b) {
+        return new Headers(b, b.length);
+    }
+
+    static Headers fromBytes(byte[] b, int length) {
+        return new Headers(b, length);
+    }
+
+    /**
+     * Makes this instance describe the header block in {@code b[0, length)} instead,
+     * reusing its tables. The array is not copied and must not change while in use.
+     */
+    void reset(byte[] b, int length) {
+        data = b;
+        this.length = length;
+        count = 0;
+        contentDispositionIndex = -1;
+        contentTypeIndex = -1;
+        if (values != null) {
+            Arrays.fill(values, null);
+        }
+        headers = null;
+        contentDisposition = null;
+        contentType = null;
+
+        scan();
+    }
+
+    /**
+     * Returns the number of header lines.
+     */
+    int count() {
+        return count;
+    }
 
-    private Headers(List<Header> headers) {
-        this.headers = headers;
+    /**
+     * Returns the raw header block this instance was created from. Must not be modified.
+     */
+    byte[] bytes() {
+        return length == data.length ? data : Arrays.copyOf(data, length);
     }
 
-    private static String decodeParameterValue(String value) {
-        if (value.startsWith("\"") && value.endsWith("\"")) {
-            return value.substring(1, value.length() - 1);
+    private void scan() {
+        int end = length;
+
+        // Trailing empty lines are ignored
+        while (end >= 2 && data[end - 2] == '\r' && data[end - 1] == '\n') {
+            end -= 2;
         }
 
-        String magicUtf8Indicator = "utf-8''";
-        if (value.startsWith(magicUtf8Indicator)) {
-            return URLDecoder.decode(value.substring(magicUtf8Indicator.length()), StandardCharsets.UTF_8);
+        for (int lineStart = 0; lineStart < end; ) {
+            int lineEnd = indexOfLineEnd(lineStart, end);
+            scanLine(lineStart, lineEnd);
+            lineStart = lineEnd + 2;
         }
+    }
 
-        return value;
+    private int indexOfLineEnd(int from, int end) {
+        for (int i = from; i < end - 1; ++i) {
+            if (data[i] == '\r' && data[i + 1] == '\n') {
+                return i;
+            }
+        }
+
+        return end;
     }
 
-    private static Map<String, String> parseDispositionParameters(String contentDispositionValue) {
-        // https://www.rfc-editor.org/rfc/rfc6266
+    private void scanLine(int lineStart, int lineEnd) {
+        int colon = lineStart;
+        while (colon < lineEnd && data[colon] != ':') {
+            ++colon;
+        }
 
-        String[] parts = contentDispositionValue.split("\\s*;\\s*", 2);
-        if (parts.length != 2) {
+        if (colon == lineEnd) {
             throw new IllegalArgumentException(
-                    "malformed content-disposition header value: " + contentDispositionValue);
+                    "malformed header line: " + new String(data, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+        }
+
+        int nameEnd = colon;
+        while (nameEnd > lineStart && isWhitespace(data[nameEnd - 1])) {
+            --nameEnd;
         }
 
-        // parts[0] ignored
-        String remainingParams = parts[1];
+        int valueStart = colon + 1;
+        while (valueStart < lineEnd && isWhitespace(data[valueStart])) {
+            ++valueStart;
+        }
 
-        Map<String, String> parameters = new TreeMap<>();
+        if (FIELDS * (count + 1) > offsets.length) {
+            offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+        }
 
-        do {
-            parts = remainingParams.split("\\s*;\\s*", 2);
-            String[] paramParts = parts[0].split("\\s*=\\s*", 2);
-            if (paramParts.length != 2) {
-                throw new IllegalArgumentException("malformed parameter in content-disposition header: " + parts[0]);
+        int base = FIELDS * count;
+        offsets[base + NAME_START] = lineStart;
+        offsets[base + NAME_END] = nameEnd;
+        offsets[base + VALUE_START] = valueStart;
+        offsets[base + VALUE_END] = lineEnd;
+
+        if (contentDispositionIndex == -1 && nameEquals(count, CONTENT_DISPOSITION)) {
+            contentDispositionIndex = count;
+        } else if (contentTypeIndex == -1 && nameEquals(count, CONTENT_TYPE)) {
+            contentTypeIndex = count;
+        }
+
+        ++count;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        // Same as \s in java.util.regex
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0b || b == '\f' || b == '\r';
+    }
+
+    private boolean nameEquals(int index, String name) {
+        int start = offsets[FIELDS * index + NAME_START];
+        int end = offsets[FIELDS * index + NAME_END];
+
+        if (end - start != name.length()) {
+            return !isAscii(name) && decodeName(index).equalsIgnoreCase(name);
+        }
+
+        for (int i = 0; i < name.length(); ++i) {
+            int c = name.charAt(i);
+            int b = data[start + i] & 0xff;
+            if (c >= 0x80 || b >= 0x80) {
+                return decodeName(index).equalsIgnoreCase(name);
+            }
+            if (c != b && toLowerAscii(c) != toLowerAscii(b)) {
+                return false;
             }
-            parameters.put(paramParts[0].toLowerCase(), decodeParameterValue(paramParts[1]));
+        }
+
+        return true;
+    }
 
-            if (parts.length < 2) {
-                break;
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); ++i) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
             }
+        }
 
-            remainingParams = parts[1];
-        } while (true);
+        return true;
+    }
 
-        return parameters;
+    private static int toLowerAscii(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
     }
 
-    public static Headers fromBytes(byte[] b) {
-        if (b.length == 0) {
-            return new Headers(Collections.emptyList());
+    private String decodeName(int index) {
+        int start = offsets[FIELDS * index + NAME_START];
+        return new String(data, start, offsets[FIELDS * index + NAME_END] - start, StandardCharsets.UTF_8);
+    }
+
+    private String value(int index) {
+        if (values == null || values.length < count) {
+            values = new String[count];
         }
 
-        String s = new String(b, StandardCharsets.UTF_8);
-        return new Headers(Arrays.stream(s.split("\r\n")).map(Header::parseLine).collect(Collectors.toList()));
+        if (values[index] == null) {
+            int start = offsets[FIELDS * index + VALUE_START];
+            values[index] = new String(data, start, offsets[FIELDS * index + VALUE_END] - start, StandardCharsets.UTF_8);
+        }
+
+        return values[index];
     }
 
     public List<Header> getAll() {
+        if (headers == null) {
+            List<Header> list = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                list.add(new Header(decodeName(i), value(i)));
+            }
+            headers = Collections.unmodifiableList(list);
+        }
+
         return headers;
     }
 
     public String getHeaderValue(String headerName) {
-        return headers
-                .stream()
-                .filter(header -> header.getName().equalsIgnoreCase(headerName))
-                .map(Header::getValue)
-                .findFirst()
-                .orElse(null);
+        int index = indexOf(headerName);
+        return index == -1 ? null : value(index);
     }
 
-    public String getName() {
-        String cd = getHeaderValue("content-disposition");
-        if (cd == null) {
-            return null;
+    private int indexOf(String headerName) {
+        if (headerName.equalsIgnoreCase(CONTENT_DISPOSITION)) {
+            return contentDispositionIndex;
+        }
+
+        if (headerName.equalsIgnoreCase(CONTENT_TYPE)) {
+            return contentTypeIndex;
         }
 
-        return parseDispositionParameters(cd).get("name");
+        for (int i = 0; i < count; ++i) {
+            if (nameEquals(i, headerName)) {
+                return i;
+            }
+        }
+
+        return -1;
     }
 
-    public String getFilename() {
-        String cd = getHeaderValue("content-disposition");
-        if (cd == null) {
-            return null;
+    /**
+     * Returns the parsed Content-Disposition header, or null if there is none. The result
+     * is cached, so repeated calls are cheap.
+     */
+    public ContentDisposition getContentDisposition() {
+        if (contentDisposition == null && contentDispositionIndex != -1) {
+            contentDisposition = ContentDisposition.parse(value(contentDispositionIndex));
         }
 
-        Map<String, String> parameters = parseDispositionParameters(cd);
-        return parameters.getOrDefault("filename*", parameters.get("filename"));
+        return contentDisposition;
+    }
+
+    /**
+     * Returns the parsed Content-Type header, or null if there is none. The result is
+     * cached, so repeated calls are cheap.
+     */
+    public ContentType getContentType() {
+        if (contentType == null && contentTypeIndex != -1) {
+            contentType = ContentType.parse(value(contentTypeIndex));
+        }
+
+        return contentType;
+    }
+
+    public String getName() {
+        ContentDisposition cd = getContentDisposition();
+        return cd == null ? null : cd.getName();
+    }
+
+    public String getFilename() {
+        ContentDisposition cd = getContentDisposition();
+        return cd == null ? null : cd.getFilename();
     }
 }
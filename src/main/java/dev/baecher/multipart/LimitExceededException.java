@@ -0,0 +1,41 @@
+package dev.baecher.multipart;
+
+/**
+ * Thrown when the input crosses one of the limits configured on the parser builder. Being
+ * an {@link IllegalArgumentException}, it is treated like any other malformed input by
+ * existing error handling.
+ */
+public class LimitExceededException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    public enum Limit {
+        HEADER_LENGTH("header block length"),
+        HEADER_COUNT("header count"),
+        PART_COUNT("part count"),
+        PART_LENGTH("part length"),
+        TOTAL_LENGTH("total length");
+
+        private final String description;
+
+        Limit(String description) {
+            this.description = description;
+        }
+    }
+
+    private final Limit limit;
+    private final long maxValue;
+
+    public LimitExceededException(Limit limit, long maxValue) {
+        super(limit.description + " limit of " + maxValue + " exceeded");
+        this.limit = limit;
+        this.maxValue = maxValue;
+    }
+
+    public Limit getLimit() {
+        return limit;
+    }
+
+    public long getMaxValue() {
+        return maxValue;
+    }
+}
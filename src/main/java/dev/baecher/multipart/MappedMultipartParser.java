@@ -0,0 +1,339 @@
+package dev.baecher.multipart;
+
+import dev.baecher.io.Boundary;
+import dev.baecher.io.ParallelBoundaryScan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parses a multipart body that is already stored in a file by memory-mapping it. Bodies are
+ * never copied: each part is described by its offset and length in the file and can be
+ * obtained as a read-only view of the mapping or transferred to a channel directly.
+ * <p>
+ * Unlike with {@link StreamingMultipartParser}, parts can be kept and used in any order. The
+ * file is mapped in windows, so files larger than 2 GB are supported, but a single body can
+ * only be viewed as a buffer if it is smaller than that.
+ */
+public class MappedMultipartParser implements Iterator<MappedMultipartParser.Part>, AutoCloseable {
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final Boundary LINE_END = new Boundary(new byte[]{CR, LF});
+    private static final Boundary HEADER_END = new Boundary(new byte[]{CR, LF, CR, LF});
+
+    private final FileChannel channel;
+    private final boolean ownsChannel;
+    private final long size;
+    private final int windowSize;
+    private final int maxHeaderLength;
+    private final Boundary boundaryMarker;
+    private final long[] delimiters;
+    private int nextDelimiter;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+
+    public static class Builder {
+        private final FileChannel channel;
+        private final Path path;
+        private int windowSize = 1 << 30;
+        private int maxHeaderLength = 0x10000;
+        private ForkJoinPool scanPool;
+
+        private Builder(FileChannel channel, Path path) {
+            this.channel = channel;
+            this.path = path;
+        }
+
+        /**
+         * Sets how much of the file is mapped at once while searching for boundaries.
+         */
+        public Builder windowSize(int windowSize) {
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        public Builder maxHeaderLength(int maxHeaderLength) {
+            this.maxHeaderLength = maxHeaderLength;
+            return this;
+        }
+
+        /**
+         * Finds all delimiters up front with a {@link ParallelBoundaryScan} on the given pool,
+         * instead of searching for each one when the part is reached. Pays off for large files
+         * on machines with many cores.
+         */
+        public Builder parallelScan(ForkJoinPool scanPool) {
+            this.scanPool = scanPool;
+            return this;
+        }
+
+        public MappedMultipartParser build() throws IOException {
+            if (windowSize < HEADER_END.length()) {
+                throw new IllegalArgumentException("window size is too small");
+            }
+
+            if (path == null) {
+                return new MappedMultipartParser(this, channel, false);
+            }
+
+            FileChannel opened = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                return new MappedMultipartParser(this, opened, true);
+            } catch (IOException | RuntimeException e) {
+                opened.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Parses the file at the given path, which is closed along with the parser.
+     */
+    public static Builder builder(Path path) {
+        return new Builder(null, path);
+    }
+
+    /**
+     * Parses the whole content of the channel, which stays open when the parser is closed.
+     */
+    public static Builder builder(FileChannel channel) {
+        return new Builder(channel, null);
+    }
+
+    private MappedMultipartParser(Builder builder, FileChannel channel, boolean ownsChannel) throws IOException {
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        size = channel.size();
+        windowSize = builder.windowSize;
+        maxHeaderLength = builder.maxHeaderLength;
+
+        long lineEnd = indexOf(LINE_END, 0, Math.min(size, windowSize));
+        if (lineEnd == -1) {
+            throw new IllegalArgumentException("no boundary could be found at the start of the stream");
+        }
+
+        if (windowSize < 3 * lineEnd) {
+            throw new IllegalArgumentException("window size should be much larger than boundary marker length");
+        }
+
+        byte[] marker = new byte[(int) lineEnd + 2];
+        marker[0] = CR;
+        marker[1] = LF;
+        read(0, marker, 2, (int) lineEnd);
+        boundaryMarker = new Boundary(marker);
+
+        // Leave the line end in place, just like after any other boundary
+        position = lineEnd;
+
+        delimiters = builder.scanPool == null
+                ? null
+                : ParallelBoundaryScan.findAll(channel, boundaryMarker, position, size, builder.scanPool);
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            if (size - position >= 2) {
+                byte[] next = new byte[2];
+                read(position, next, 0, 2);
+                if (next[0] == CR && next[1] == LF) {
+                    return true;
+                }
+                if (next[0] == '-' && next[1] == '-') {
+                    return false;
+                }
+            }
+
+            throw new IllegalArgumentException("premature end of data, expected line break or close delimiter after boundary");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Part next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        try {
+            long headerStart = position + 2;
+            long headerEnd = indexOf(HEADER_END, headerStart,
+                    Math.min(size, headerStart + maxHeaderLength + HEADER_END.length()));
+            if (headerEnd == -1) {
+                throw new IllegalArgumentException("could not find end of header");
+            }
+
+            byte[] header = new byte[(int) (headerEnd - headerStart)];
+            read(headerStart, header, 0, header.length);
+
+            long bodyStart = headerEnd + HEADER_END.length();
+            long bodyEnd = delimiters == null ? indexOf(boundaryMarker, bodyStart, size) : nextDelimiter(bodyStart);
+            if (bodyEnd == -1) {
+                throw new IllegalArgumentException("premature end of data, could not find boundary");
+            }
+
+            position = bodyEnd + boundaryMarker.length();
+
+            return new Part(Headers.fromBytes(header), headerStart, bodyStart, bodyEnd - bodyStart);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Closes the file if the parser was created from a path. Buffers that were handed out
+     * stay valid either way.
+     */
+    @Override
+    public void close() throws IOException {
+        window = null;
+        if (ownsChannel) {
+            channel.close();
+        }
+    }
+
+    private long nextDelimiter(long from) {
+        while (nextDelimiter < delimiters.length && delimiters[nextDelimiter] < from) {
+            nextDelimiter++;
+        }
+
+        return nextDelimiter < delimiters.length ? delimiters[nextDelimiter] : -1;
+    }
+
+    /**
+     * Returns the file offset of the first occurrence of the boundary within
+     * {@code [from, to)}, or -1 if there is none.
+     */
+    private long indexOf(Boundary boundary, long from, long to) throws IOException {
+        long searchFrom = from;
+
+        while (to - searchFrom >= boundary.length()) {
+            map(searchFrom, boundary.length());
+
+            int windowEnd = (int) Math.min(window.limit(), to - windowStart);
+            int index = boundary.indexOf(window, (int) (searchFrom - windowStart), windowEnd);
+            if (index != -1) {
+                return windowStart + index;
+            }
+
+            // Occurrences across the end of the window are found in the next one
+            searchFrom = windowStart + windowEnd - boundary.length() + 1;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Makes sure the window covers at least {@code minLength} bytes starting at the given
+     * offset, or everything up to the end of the file.
+     */
+    private void map(long offset, int minLength) throws IOException {
+        long requiredEnd = Math.min(size, offset + minLength);
+        if (window != null && offset >= windowStart && requiredEnd <= windowStart + window.limit()) {
+            return;
+        }
+
+        windowStart = offset;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(windowSize, size - offset));
+    }
+
+    private void read(long offset, byte[] b, int off, int len) throws IOException {
+        map(offset, len);
+
+        if (offset + len <= windowStart + window.limit()) {
+            window.duplicate().position((int) (offset - windowStart)).get(b, off, len);
+            return;
+        }
+
+        ByteBuffer dst = ByteBuffer.wrap(b, off, len);
+        while (dst.hasRemaining()) {
+            if (channel.read(dst, offset + dst.position() - off) < 0) {
+                throw new IllegalArgumentException("premature end of data");
+            }
+        }
+    }
+
+    public class Part {
+        private final Headers headers;
+        private final long headerOffset;
+        private final long offset;
+        private final long length;
+
+        private Part(Headers headers, long headerOffset, long offset, long length) {
+            this.headers = headers;
+            this.headerOffset = headerOffset;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public Headers getHeaders() {
+            return headers;
+        }
+
+        long headerOffset() {
+            return headerOffset;
+        }
+
+        /**
+         * Returns the position of the body in the file.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * Returns the body as a read-only view of the mapped file. Bodies within the current
+         * window share its mapping, others are mapped on their own.
+         */
+        public ByteBuffer getBody() throws IOException {
+            if (length > Integer.MAX_VALUE) {
+                throw new IllegalStateException("body is too large for a single buffer, use transferTo instead");
+            }
+
+            ByteBuffer mapping;
+            int start;
+            if (window != null && offset >= windowStart && offset + length <= windowStart + window.limit()) {
+                mapping = window;
+                start = (int) (offset - windowStart);
+            } else {
+                mapping = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                start = 0;
+            }
+
+            return mapping.duplicate().position(start).limit(start + (int) length).slice().asReadOnlyBuffer();
+        }
+
+        /**
+         * Writes the body to the channel using {@link FileChannel#transferTo}, which lets the
+         * operating system copy the data without it passing through the JVM heap. Fails if the
+         * file has been truncated or the channel stops accepting data, as a non-blocking one may.
+         */
+        public long transferTo(WritableByteChannel out) throws IOException {
+            long transferred = 0;
+            while (transferred < length) {
+                long n = channel.transferTo(offset + transferred, length - transferred, out);
+                if (n == 0) {
+                    throw new IOException("transfer stalled after " + transferred + " of " + length + " bytes");
+                }
+                transferred += n;
+            }
+
+            return transferred;
+        }
+    }
+}
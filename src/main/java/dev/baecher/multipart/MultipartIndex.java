@@ -0,0 +1,292 @@
+package dev.baecher.multipart;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The layout of a multipart body: for every part the position of its header block and body
+ * along with the parsed headers. Built by scanning a seekable source once, after which parts
+ * can be looked up and opened in any order and as often as needed.
+ * <p>
+ * An index can be saved with {@link #writeTo(OutputStream)} and loaded again with
+ * {@link #readFrom(InputStream)}, for example as a sidecar file next to a stored body.
+ */
+public final class MultipartIndex {
+    private static final int MAGIC = 0x4d504958;
+    private static final int VERSION = 1;
+
+    private final List<Entry> entries;
+    private final Map<String, Entry> entriesByName = new HashMap<>();
+
+    public static final class Entry {
+        private final Headers headers;
+        private final long headerOffset;
+        private final long bodyOffset;
+        private final long bodyLength;
+
+        private Entry(Headers headers, long headerOffset, long bodyOffset, long bodyLength) {
+            this.headers = headers;
+            this.headerOffset = headerOffset;
+            this.bodyOffset = bodyOffset;
+            this.bodyLength = bodyLength;
+        }
+
+        public Headers getHeaders() {
+            return headers;
+        }
+
+        public long getHeaderOffset() {
+            return headerOffset;
+        }
+
+        public long getHeaderLength() {
+            return headers.bytes().length;
+        }
+
+        public long getBodyOffset() {
+            return bodyOffset;
+        }
+
+        public long getBodyLength() {
+            return bodyLength;
+        }
+
+        /**
+         * Returns a stream over the body, read from the channel at the recorded position.
+         * Streams on a {@link FileChannel} use positional reads and may be used concurrently;
+         * for other channels they move the channel's position on every read.
+         */
+        public InputStream openBody(SeekableByteChannel channel) {
+            return new RangeInputStream(channel, bodyOffset, bodyLength);
+        }
+
+        public InputStream openBody(byte[] data) {
+            if (bodyOffset + bodyLength > data.length) {
+                throw new IllegalArgumentException("index does not match data");
+            }
+
+            return new ByteArrayInputStream(data, (int) bodyOffset, (int) bodyLength);
+        }
+    }
+
+    private MultipartIndex(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+        for (Entry entry : entries) {
+            String name = entry.getHeaders().getName();
+            if (name != null) {
+                entriesByName.putIfAbsent(name, entry);
+            }
+        }
+    }
+
+    /**
+     * Indexes the whole content of the channel, starting at position 0. File channels are
+     * scanned through a memory mapping, other channels are streamed.
+     */
+    public static MultipartIndex scan(SeekableByteChannel channel) throws IOException {
+        if (channel instanceof FileChannel) {
+            return scanMapped((FileChannel) channel);
+        }
+
+        channel.position(0);
+        return scan(StreamingMultipartParser.builder(channel).build());
+    }
+
+    public static MultipartIndex scan(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return scanMapped(channel);
+        }
+    }
+
+    public static MultipartIndex scan(byte[] data) throws IOException {
+        return scan(new StreamingMultipartParser(new ByteArrayInputStream(data)));
+    }
+
+    private static MultipartIndex scanMapped(FileChannel channel) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+
+        try (MappedMultipartParser parser = MappedMultipartParser.builder(channel).build()) {
+            while (parser.hasNext()) {
+                MappedMultipartParser.Part part = parser.next();
+                entries.add(new Entry(part.getHeaders(), part.headerOffset(), part.getOffset(), part.getLength()));
+            }
+        }
+
+        return new MultipartIndex(entries);
+    }
+
+    private static MultipartIndex scan(StreamingMultipartParser parser) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+
+        try (parser) {
+            while (parser.hasNext()) {
+                StreamingMultipartParser.Part part = parser.next();
+                long bodyLength = part.skip();
+                entries.add(new Entry(part.getHeaders(), part.headerOffset(), part.bodyOffset(), bodyLength));
+            }
+        }
+
+        return new MultipartIndex(entries);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Entry get(int index) {
+        return entries.get(index);
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the first part with the given form field name, or null if there is none.
+     */
+    public Entry get(String name) {
+        return entriesByName.get(name);
+    }
+
+    /**
+     * Writes the index in a compact binary form: the offsets and raw header block of
+     * every part.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(entries.size());
+
+        for (Entry entry : entries) {
+            byte[] header = entry.headers.bytes();
+            data.writeLong(entry.headerOffset);
+            data.writeLong(entry.bodyOffset);
+            data.writeLong(entry.bodyLength);
+            data.writeInt(header.length);
+            data.write(header);
+        }
+
+        data.flush();
+    }
+
+    /**
+     * Reads an index written by {@link #writeTo(OutputStream)}. Counts and lengths are checked
+     * against the data actually present, so a corrupt index fails with an IOException instead
+     * of allocating whatever it claims.
+     */
+    public static MultipartIndex readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IllegalArgumentException("not a multipart index");
+        }
+
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported multipart index version: " + version);
+        }
+
+        int count = data.readInt();
+        if (count < 0) {
+            throw new IOException("corrupt multipart index, negative part count: " + count);
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long headerOffset = data.readLong();
+            long bodyOffset = data.readLong();
+            long bodyLength = data.readLong();
+            int headerLength = data.readInt();
+            if (headerOffset < 0 || bodyOffset < 0 || bodyLength < 0 || headerLength < 0) {
+                throw new IOException("corrupt multipart index, negative offset or length in part " + i);
+            }
+
+            // Reads in chunks, so a bogus length runs out of data before it runs out of memory
+            byte[] header = data.readNBytes(headerLength);
+            if (header.length < headerLength) {
+                throw new EOFException("multipart index ends within part " + i);
+            }
+            entries.add(new Entry(Headers.fromBytes(header), headerOffset, bodyOffset, bodyLength));
+        }
+
+        return new MultipartIndex(entries);
+    }
+
+    private static class RangeInputStream extends InputStream {
+        private final SeekableByteChannel channel;
+        private final byte[] oneByte = new byte[1];
+        private long position;
+        private long remaining;
+
+        private RangeInputStream(SeekableByteChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(oneByte, 0, 1) == -1 ? -1 : oneByte[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (remaining == 0) {
+                return -1;
+            }
+
+            ByteBuffer dst = ByteBuffer.wrap(b, off, (int) Math.min(len, remaining));
+            int bytesRead;
+            if (channel instanceof FileChannel) {
+                bytesRead = ((FileChannel) channel).read(dst, position);
+            } else {
+                synchronized (channel) {
+                    channel.position(position);
+                    bytesRead = channel.read(dst);
+                }
+            }
+
+            if (bytesRead < 0) {
+                throw new IllegalArgumentException("premature end of data, index does not match source");
+            }
+
+            position += bytesRead;
+            remaining -= bytesRead;
+
+            return bytesRead;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, remaining));
+            position += skipped;
+            remaining -= skipped;
+
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+    }
+}
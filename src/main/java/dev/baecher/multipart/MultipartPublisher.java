@@ -0,0 +1,336 @@
+package dev.baecher.multipart;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the parts of a {@link StreamingMultipartParser} as a {@link Flow.Publisher}, with
+ * each part body being a publisher of {@link ByteBuffer} chunks in turn. The source is only
+ * read as far as the subscribers' demand requires, so a slow subscriber throttles reading
+ * instead of having data queue up.
+ * <p>
+ * Like with the parser itself, parts are strictly sequential: the next part is published only
+ * after the body of the previous one has completed or its subscription has been cancelled,
+ * in which case the rest of that body is skipped. All reading and signalling happens on the
+ * given executor. Reads block, so that executor should not be a shared pool like
+ * {@link java.util.concurrent.ForkJoinPool#commonPool()}.
+ * <p>
+ * Cancelling the parts subscription skips the current part, fails its body subscriber with a
+ * {@link CancellationException} and closes the parser.
+ */
+public class MultipartPublisher implements Flow.Publisher<MultipartPublisher.PublishedPart> {
+    private static final Flow.Subscription REJECTED = new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private final StreamingMultipartParser parser;
+    private final Executor executor;
+    private final int chunkSize;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    public static class Builder {
+        private final StreamingMultipartParser parser;
+        private Executor executor;
+        private int chunkSize = 0x2000;
+
+        private Builder(StreamingMultipartParser parser) {
+            this.parser = parser;
+        }
+
+        /**
+         * Sets the executor that reads the source and signals subscribers. Required.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size of the body chunks. Chunks may be smaller.
+         */
+        public Builder chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        public MultipartPublisher build() {
+            if (executor == null) {
+                throw new IllegalArgumentException("executor must be set");
+            }
+            if (chunkSize <= 0) {
+                throw new IllegalArgumentException("chunk size must be positive");
+            }
+
+            return new MultipartPublisher(parser, executor, chunkSize);
+        }
+    }
+
+    public static Builder builder(StreamingMultipartParser parser) {
+        return new Builder(parser);
+    }
+
+    private MultipartPublisher(StreamingMultipartParser parser, Executor executor, int chunkSize) {
+        this.parser = parser;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super PublishedPart> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(REJECTED);
+            subscriber.onError(new IllegalStateException("only a single subscriber is supported"));
+            return;
+        }
+
+        PartSubscription subscription = new PartSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private static long addCapped(AtomicLong demand, long n) {
+        return demand.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+    }
+
+    public static class PublishedPart {
+        private final Headers headers;
+        private final Flow.Publisher<ByteBuffer> body;
+
+        private PublishedPart(Headers headers, Flow.Publisher<ByteBuffer> body) {
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public Headers getHeaders() {
+            return headers;
+        }
+
+        /**
+         * Returns the body as a publisher that accepts a single subscriber. Every chunk is a
+         * fresh buffer that the subscriber may keep.
+         */
+        public Flow.Publisher<ByteBuffer> getBody() {
+            return body;
+        }
+    }
+
+    private class PartSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super PublishedPart> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pendingSignals = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable requestError;
+        private boolean terminated;
+        private Body current;
+
+        private PartSubscription(Flow.Subscriber<? super PublishedPart> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                requestError = new IllegalArgumentException("non-positive request: " + n);
+            } else {
+                addCapped(demand, n);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            signal();
+        }
+
+        private void signal() {
+            if (pendingSignals.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+
+            do {
+                if (!terminated) {
+                    try {
+                        emit();
+                    } catch (RuntimeException | IOException e) {
+                        fail(e);
+                    }
+                } else if (current != null) {
+                    current.finish();
+                }
+                missed = pendingSignals.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() throws IOException {
+            while (!terminated) {
+                if (cancelled) {
+                    cancelCurrent();
+                    return;
+                }
+
+                if (requestError != null) {
+                    fail(requestError);
+                    return;
+                }
+
+                if (current != null) {
+                    if (!current.emit()) {
+                        return;
+                    }
+                    current = null;
+                    continue;
+                }
+
+                if (demand.get() == 0) {
+                    return;
+                }
+
+                if (!parser.hasNext()) {
+                    terminated = true;
+                    subscriber.onComplete();
+                    return;
+                }
+
+                demand.decrementAndGet();
+                current = new Body(parser.next());
+                subscriber.onNext(new PublishedPart(current.part.getHeaders(), current));
+            }
+        }
+
+        private void cancelCurrent() {
+            terminated = true;
+            try {
+                if (current != null) {
+                    current.failure = new CancellationException("parts subscription cancelled");
+                    current.finish();
+                    current.part.skip();
+                }
+            } catch (RuntimeException | IOException e) {
+                // Nobody is left to report this to.
+            } finally {
+                parser.close();
+            }
+        }
+
+        private void fail(Throwable e) {
+            terminated = true;
+            if (current != null) {
+                current.failure = e;
+                current.finish();
+            }
+            parser.close();
+            subscriber.onError(e);
+        }
+
+        private class Body implements Flow.Publisher<ByteBuffer>, Flow.Subscription {
+            private final StreamingMultipartParser.Part part;
+            private final AtomicLong demand = new AtomicLong();
+            private final AtomicBoolean subscribed = new AtomicBoolean();
+            private volatile Flow.Subscriber<? super ByteBuffer> subscriber;
+            private volatile boolean cancelled;
+            private volatile Throwable requestError;
+            private Throwable failure;
+            private boolean finished;
+
+            private Body(StreamingMultipartParser.Part part) {
+                this.part = part;
+            }
+
+            @Override
+            public void subscribe(Flow.Subscriber<? super ByteBuffer> s) {
+                if (!subscribed.compareAndSet(false, true)) {
+                    s.onSubscribe(REJECTED);
+                    s.onError(new IllegalStateException("only a single subscriber is supported"));
+                    return;
+                }
+
+                s.onSubscribe(this);
+                subscriber = s;
+                signal();
+            }
+
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    requestError = new IllegalArgumentException("non-positive request: " + n);
+                } else {
+                    addCapped(demand, n);
+                }
+                signal();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                signal();
+            }
+
+            /**
+             * Emits as many chunks as demanded. Returns true once the body is done with.
+             */
+            private boolean emit() throws IOException {
+                while (true) {
+                    if (cancelled) {
+                        part.skip();
+                        return true;
+                    }
+
+                    if (subscriber == null) {
+                        return false;
+                    }
+
+                    if (requestError != null) {
+                        subscriber.onError(requestError);
+                        cancelled = true;
+                        continue;
+                    }
+
+                    if (demand.get() == 0) {
+                        return false;
+                    }
+
+                    ByteBuffer view = part.readBuffer(chunkSize);
+                    if (view == null) {
+                        subscriber.onComplete();
+                        return true;
+                    }
+
+                    ByteBuffer chunk = ByteBuffer.allocate(view.remaining());
+                    chunk.put(view).flip();
+                    demand.decrementAndGet();
+                    subscriber.onNext(chunk);
+                }
+            }
+
+            /**
+             * Passes the failure that ended the parts subscription on to the body subscriber,
+             * once there is one.
+             */
+            private void finish() {
+                if (finished || subscriber == null) {
+                    return;
+                }
+                finished = true;
+                if (!cancelled) {
+                    subscriber.onError(failure);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package dev.baecher.multipart;
+
+import dev.baecher.io.BufferPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reads parts on the calling thread and hands each part to a consumer running on an
+ * {@link Executor}, so that CPU-heavy processing of different parts runs in parallel while
+ * the source keeps being read.
+ * <p>
+ * Bodies are passed on in chunks taken from a fixed pool. When all chunks are in use, reading
+ * pauses until a consumer catches up, so memory use is bounded by chunk size times chunk count.
+ */
+public class ParallelPartProcessor {
+    public interface PartConsumer {
+        /**
+         * Processes a single part. The body stream only needs to be read as far as desired;
+         * the rest is discarded once the consumer returns.
+         */
+        void accept(Headers headers, InputStream body) throws IOException;
+    }
+
+    private final StreamingMultipartParser parser;
+    private final Executor executor;
+    private final int chunkSize;
+    private final int chunkCount;
+    private final int maxPartsInFlight;
+    private final BufferPool bufferPool;
+
+    public static class Builder {
+        private final StreamingMultipartParser parser;
+        private final Executor executor;
+        private int chunkSize = 0x10000;
+        private int chunkCount = 16;
+        private int maxPartsInFlight = 16;
+        private BufferPool bufferPool = BufferPool.NONE;
+
+        private Builder(StreamingMultipartParser parser, Executor executor) {
+            this.parser = parser;
+            this.executor = executor;
+        }
+
+        public Builder chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        public Builder chunkCount(int chunkCount) {
+            this.chunkCount = chunkCount;
+            return this;
+        }
+
+        public Builder maxPartsInFlight(int maxPartsInFlight) {
+            this.maxPartsInFlight = maxPartsInFlight;
+            return this;
+        }
+
+        /**
+         * Sets the pool that chunks are taken from. They are handed back when
+         * {@link #process(PartConsumer)} returns.
+         */
+        public Builder bufferPool(BufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+            return this;
+        }
+
+        public ParallelPartProcessor build() {
+            if (chunkSize <= 0 || chunkCount <= 0 || maxPartsInFlight <= 0) {
+                throw new IllegalArgumentException("chunk size, chunk count and parts in flight must be positive");
+            }
+
+            return new ParallelPartProcessor(this);
+        }
+    }
+
+    public static Builder builder(StreamingMultipartParser parser, Executor executor) {
+        return new Builder(parser, executor);
+    }
+
+    private ParallelPartProcessor(Builder builder) {
+        parser = builder.parser;
+        executor = builder.executor;
+        chunkSize = builder.chunkSize;
+        chunkCount = builder.chunkCount;
+        maxPartsInFlight = builder.maxPartsInFlight;
+        bufferPool = builder.bufferPool;
+    }
+
+    /**
+     * Processes all remaining parts and returns once every consumer has finished. The first
+     * failure, either from reading or from a consumer, stops reading and is rethrown.
+     */
+    public void process(PartConsumer consumer) throws IOException {
+        Run run = new Run(consumer);
+        try {
+            run.readAll();
+        } catch (IOException | RuntimeException | Error e) {
+            run.fail(e);
+        } finally {
+            run.awaitConsumers();
+            run.releaseChunks();
+        }
+
+        run.rethrowFailure();
+    }
+
+    private static class Chunk {
+        private static final Chunk END = new Chunk(null, 0);
+
+        private final byte[] data;
+        private final int length;
+
+        private Chunk(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    private class Run {
+        private final PartConsumer consumer;
+        private final BlockingQueue<byte[]> freeChunks = new ArrayBlockingQueue<>(chunkCount);
+        private final Semaphore partsInFlight = new Semaphore(maxPartsInFlight);
+        private final Phaser consumers = new Phaser(1);
+        private final Set<QueuedBody> activeBodies = ConcurrentHashMap.newKeySet();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private Run(PartConsumer consumer) {
+            this.consumer = consumer;
+            for (int i = 0; i < chunkCount; i++) {
+                freeChunks.add(bufferPool.acquire(chunkSize));
+            }
+        }
+
+        private void readAll() throws IOException {
+            while (failure.get() == null && parser.hasNext()) {
+                acquirePartSlot();
+
+                StreamingMultipartParser.Part part = parser.next();
+                QueuedBody body = new QueuedBody(this);
+                activeBodies.add(body);
+                consumers.register();
+
+                try {
+                    executor.execute(() -> {
+                        try {
+                            consumer.accept(part.getHeaders(), body);
+                        } catch (Throwable t) {
+                            fail(t);
+                        } finally {
+                            finishConsumer(body);
+                        }
+                    });
+                } catch (RuntimeException | Error e) {
+                    // Rejected, so the consumer will never run and arrive
+                    finishConsumer(body);
+                    throw e;
+                }
+
+                pump(part, body);
+            }
+        }
+
+        private void finishConsumer(QueuedBody body) {
+            body.discard();
+            activeBodies.remove(body);
+            partsInFlight.release();
+            consumers.arriveAndDeregister();
+        }
+
+        private void pump(StreamingMultipartParser.Part part, QueuedBody body) throws IOException {
+            InputStream in = part.getInputStream();
+
+            while (true) {
+                if (failure.get() != null) {
+                    body.fail(new IOException("processing was aborted"));
+                    return;
+                }
+
+                if (body.isDiscarded()) {
+                    part.skip();
+                    return;
+                }
+
+                byte[] chunk = takeChunk();
+                int length;
+                try {
+                    length = in.readNBytes(chunk, 0, chunk.length);
+                } catch (IOException | RuntimeException | Error e) {
+                    freeChunks.add(chunk);
+                    throw e;
+                }
+
+                if (length > 0) {
+                    body.offer(new Chunk(chunk, length));
+                } else {
+                    freeChunks.add(chunk);
+                }
+
+                if (length < chunk.length) {
+                    body.offer(Chunk.END);
+                    return;
+                }
+            }
+        }
+
+        private void acquirePartSlot() throws InterruptedIOException {
+            try {
+                partsInFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for a consumer");
+            }
+        }
+
+        private byte[] takeChunk() throws InterruptedIOException {
+            try {
+                return freeChunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for a free chunk");
+            }
+        }
+
+        private void fail(Throwable t) {
+            if (failure.compareAndSet(null, t)) {
+                for (QueuedBody body : activeBodies) {
+                    body.fail(t);
+                }
+            }
+        }
+
+        private void awaitConsumers() {
+            consumers.arriveAndAwaitAdvance();
+        }
+
+        private void releaseChunks() {
+            for (byte[] chunk; (chunk = freeChunks.poll()) != null; ) {
+                bufferPool.release(chunk);
+            }
+        }
+
+        private void rethrowFailure() throws IOException {
+            Throwable t = failure.get();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            } else if (t != null) {
+                throw new IOException(t);
+            }
+        }
+    }
+
+    private static class QueuedBody extends InputStream {
+        private final Run run;
+        private final BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<>();
+        private final byte[] oneByte = new byte[1];
+        private Chunk current;
+        private int position;
+        private boolean discarded;
+        private volatile Throwable failure;
+
+        private QueuedBody(Run run) {
+            this.run = run;
+        }
+
+        private synchronized void offer(Chunk chunk) {
+            if (discarded) {
+                recycle(chunk);
+            } else {
+                chunks.add(chunk);
+            }
+        }
+
+        private synchronized boolean isDiscarded() {
+            return discarded;
+        }
+
+        private void fail(Throwable t) {
+            failure = t;
+            chunks.add(Chunk.END);
+        }
+
+        private synchronized void discard() {
+            discarded = true;
+            recycle(current);
+            current = null;
+            for (Chunk chunk; (chunk = chunks.poll()) != null; ) {
+                recycle(chunk);
+            }
+        }
+
+        private void recycle(Chunk chunk) {
+            if (chunk != null && chunk.data != null) {
+                run.freeChunks.add(chunk.data);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(oneByte, 0, 1) == -1 ? -1 : oneByte[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (isDiscarded()) {
+                throw new IOException("stream is closed");
+            }
+
+            if (len == 0) {
+                return 0;
+            }
+
+            if (current == null || position == current.length) {
+                if (current == Chunk.END) {
+                    return -1;
+                }
+                nextChunk();
+                if (current == Chunk.END) {
+                    return -1;
+                }
+            }
+
+            int length = Math.min(len, current.length - position);
+            System.arraycopy(current.data, position, b, off, length);
+            position += length;
+
+            return length;
+        }
+
+        private void nextChunk() throws IOException {
+            Chunk next;
+            try {
+                next = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for body data");
+            }
+
+            synchronized (this) {
+                recycle(current);
+                current = next;
+                position = 0;
+            }
+
+            if (failure != null) {
+                throw new IOException("reading the part failed", failure);
+            }
+        }
+
+        @Override
+        public void close() {
+            discard();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package dev.baecher.multipart;
+
+import dev.baecher.io.BoundaryInputStream;
+
+/**
+ * Receives events from a {@link StreamingMultipartParser}, including those of its underlying
+ * {@link BoundaryInputStream}. All methods do nothing by default, and timings are only taken
+ * when a listener is set.
+ */
+public interface ParserListener extends BoundaryInputStream.Listener {
+    /**
+     * Called after a header block has been read and scanned.
+     */
+    default void headersParsed(Headers headers, int length, long nanos) {
+    }
+
+    /**
+     * Called once the end of a part's body has been reached, with the time since the part
+     * was returned by {@link StreamingMultipartParser#next()}.
+     */
+    default void partEnded(Headers headers, long bodyLength, long nanos) {
+    }
+
+    ParserListener NONE = new ParserListener() {
+    };
+}
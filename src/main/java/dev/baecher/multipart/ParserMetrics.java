@@ -0,0 +1,123 @@
+package dev.baecher.multipart;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link ParserListener} that adds up counters and timings. It is thread-safe, so a single
+ * instance can be shared by all parsers of an application and read at any time.
+ */
+public class ParserMetrics implements ParserListener {
+    private final LongAdder sourceReads = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder refills = new LongAdder();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder bytesSearched = new LongAdder();
+    private final LongAdder resizes = new LongAdder();
+    private final LongAdder headerBlocks = new LongAdder();
+    private final LongAdder headerBytes = new LongAdder();
+    private final LongAdder headerNanos = new LongAdder();
+    private final LongAdder parts = new LongAdder();
+    private final LongAdder bodyBytes = new LongAdder();
+    private final LongAdder partNanos = new LongAdder();
+
+    @Override
+    public void sourceRead(int bytesRead) {
+        sourceReads.increment();
+        if (bytesRead > 0) {
+            this.bytesRead.add(bytesRead);
+        }
+    }
+
+    @Override
+    public void refilled(int bytes) {
+        refills.increment();
+    }
+
+    @Override
+    public void searched(int bytes, boolean found) {
+        searches.increment();
+        bytesSearched.add(bytes);
+    }
+
+    @Override
+    public void resized(int size) {
+        resizes.increment();
+    }
+
+    @Override
+    public void headersParsed(Headers headers, int length, long nanos) {
+        headerBlocks.increment();
+        headerBytes.add(length);
+        headerNanos.add(nanos);
+    }
+
+    @Override
+    public void partEnded(Headers headers, long bodyLength, long nanos) {
+        parts.increment();
+        bodyBytes.add(bodyLength);
+        partNanos.add(nanos);
+    }
+
+    public long getSourceReads() {
+        return sourceReads.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * Returns the number of times data was added to the buffer. Together with
+     * {@link #getBytesRead()} this gives the average refill size.
+     */
+    public long getRefills() {
+        return refills.sum();
+    }
+
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    /**
+     * Returns the total length of all searched windows. Bytes may be counted more than once
+     * if they had to be held back because they could be the start of a boundary.
+     */
+    public long getBytesSearched() {
+        return bytesSearched.sum();
+    }
+
+    /**
+     * Returns the number of times a buffer grew or shrank.
+     */
+    public long getResizes() {
+        return resizes.sum();
+    }
+
+    public long getHeaderBlocks() {
+        return headerBlocks.sum();
+    }
+
+    public long getHeaderBytes() {
+        return headerBytes.sum();
+    }
+
+    public long getHeaderNanos() {
+        return headerNanos.sum();
+    }
+
+    public long getParts() {
+        return parts.sum();
+    }
+
+    public long getBodyBytes() {
+        return bodyBytes.sum();
+    }
+
+    /**
+     * Returns the total time between parts being handed out and their bodies being read to
+     * the end, which includes the time the consumer took.
+     */
+    public long getPartNanos() {
+        return partNanos.sum();
+    }
+}
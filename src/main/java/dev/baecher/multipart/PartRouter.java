@@ -0,0 +1,102 @@
+package dev.baecher.multipart;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Dispatches parts to handlers registered by field name, file name pattern or an arbitrary
+ * predicate on the headers. The first matching route wins. Parts without a matching route,
+ * and whatever a handler leaves unread, are skipped without copying their bodies.
+ */
+public class PartRouter {
+    public interface PartHandler {
+        void handle(StreamingMultipartParser.Part part) throws IOException;
+    }
+
+    private static class Route {
+        private final Predicate<Headers> predicate;
+        private final PartHandler handler;
+
+        private Route(Predicate<Headers> predicate, PartHandler handler) {
+            this.predicate = predicate;
+            this.handler = handler;
+        }
+    }
+
+    private final List<Route> routes;
+
+    public static class Builder {
+        private final List<Route> routes = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        public Builder onName(String name, PartHandler handler) {
+            return on(headers -> name.equals(headers.getName()), handler);
+        }
+
+        /**
+         * Routes parts whose file name matches the pattern in its entirety.
+         */
+        public Builder onFilename(Pattern filenamePattern, PartHandler handler) {
+            return on(headers -> {
+                String filename = headers.getFilename();
+                return filename != null && filenamePattern.matcher(filename).matches();
+            }, handler);
+        }
+
+        public Builder on(Predicate<Headers> predicate, PartHandler handler) {
+            routes.add(new Route(predicate, handler));
+            return this;
+        }
+
+        public PartRouter build() {
+            return new PartRouter(new ArrayList<>(routes));
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private PartRouter(List<Route> routes) {
+        this.routes = routes;
+    }
+
+    /**
+     * Processes all remaining parts of the parser and returns the number of parts that were
+     * handed to a handler.
+     */
+    public int route(StreamingMultipartParser parser) throws IOException {
+        int handled = 0;
+
+        while (parser.hasNext()) {
+            StreamingMultipartParser.Part part = parser.next();
+            PartHandler handler = handlerFor(part.getHeaders());
+
+            if (handler != null) {
+                handler.handle(part);
+                handled++;
+            }
+
+            if (!part.isExhausted()) {
+                part.skip();
+            }
+        }
+
+        return handled;
+    }
+
+    private PartHandler handlerFor(Headers headers) {
+        for (Route route : routes) {
+            if (route.predicate.test(headers)) {
+                return route.handler;
+            }
+        }
+
+        return null;
+    }
+}
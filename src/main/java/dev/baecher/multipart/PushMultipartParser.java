@@ -0,0 +1,291 @@
+package dev.baecher.multipart;
+
+import dev.baecher.io.Boundary;
+import dev.baecher.io.BufferPool;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A non-blocking counterpart to {@link StreamingMultipartParser} for event-loop servers.
+ * Instead of pulling from a stream, the caller pushes chunks with {@link #feed(ByteBuffer)}
+ * as they arrive and receives the parts through a {@link Listener}. Memory use is bounded
+ * by the buffer size, which also limits the size of a header block.
+ */
+public class PushMultipartParser implements AutoCloseable {
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final Boundary LINE_END = new Boundary(new byte[]{CR, LF});
+    private static final Boundary HEADER_END = new Boundary(new byte[]{CR, LF, CR, LF});
+
+    public interface Listener {
+        void partStarted(Headers headers);
+
+        /**
+         * Receives the next chunk of the current part's body. The buffer is a read-only view
+         * into the parser's buffer and is only valid during the call.
+         */
+        void partData(ByteBuffer data);
+
+        void partEnded();
+
+        void streamEnded();
+    }
+
+    private enum Status {EXPECT_BOUNDARY_LINE, EXPECT_HEADER_OR_END, READING_HEADER, READING_PART_DATA, END}
+
+    private final Listener listener;
+    private final BufferPool bufferPool;
+    private byte[] buffer;
+    private int start;
+    private int end;
+    // How far the pending line or header block has been searched for its end
+    private int scanned;
+    private Boundary boundaryMarker;
+    private Status status;
+
+    public static class Builder {
+        private final Listener listener;
+        private int bufferSize = 0x10000;
+        private BufferPool bufferPool = BufferPool.NONE;
+
+        private Builder(Listener listener) {
+            this.listener = listener;
+        }
+
+        public Builder bufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Sets the pool that the parser's buffer is taken from. The buffer goes back to the
+         * pool at the end of the stream or when the parser is closed.
+         */
+        public Builder bufferPool(BufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+            return this;
+        }
+
+        public PushMultipartParser build() {
+            return new PushMultipartParser(listener, bufferSize, bufferPool);
+        }
+    }
+
+    public static Builder builder(Listener listener) {
+        return new Builder(listener);
+    }
+
+    private PushMultipartParser(Listener listener, int bufferSize, BufferPool bufferPool) {
+        if (bufferSize < HEADER_END.length()) {
+            throw new IllegalArgumentException("buffer size is too small");
+        }
+
+        this.listener = listener;
+        this.bufferPool = bufferPool;
+        buffer = bufferPool.acquire(bufferSize);
+        status = Status.EXPECT_BOUNDARY_LINE;
+    }
+
+    /**
+     * Consumes all remaining bytes of the chunk, invoking the listener for everything that
+     * can be decided so far. Never blocks.
+     */
+    public void feed(ByteBuffer chunk) {
+        while (chunk.hasRemaining()) {
+            if (status == Status.END) {
+                // Ignore the epilogue
+                chunk.position(chunk.limit());
+                return;
+            }
+
+            ensureOpen();
+            compact();
+            int length = Math.min(chunk.remaining(), buffer.length - end);
+            chunk.get(buffer, end, length);
+            end += length;
+
+            while (process(false)) {
+                // keep going while progress is made
+            }
+        }
+    }
+
+    /**
+     * Signals that the input has ended. Fails if the input ended in the middle of the
+     * multipart structure.
+     */
+    public void finish() {
+        if (status != Status.END) {
+            ensureOpen();
+        }
+
+        while (process(true)) {
+            // keep going while progress is made
+        }
+    }
+
+    public boolean isFinished() {
+        return status == Status.END;
+    }
+
+    /**
+     * Returns the buffer to its pool. Happens automatically at the end of the stream.
+     */
+    @Override
+    public void close() {
+        if (buffer != null) {
+            bufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private void ensureOpen() {
+        if (buffer == null) {
+            throw new IllegalStateException("parser is closed");
+        }
+    }
+
+    /**
+     * Moves pending bytes to the front, but only once the buffer is full to the end, so that
+     * each byte is copied at most once however small the chunks are.
+     */
+    private void compact() {
+        if (start == end) {
+            scanned -= start;
+            start = 0;
+            end = 0;
+        } else if (end == buffer.length && start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            scanned -= start;
+            end -= start;
+            start = 0;
+        }
+    }
+
+    /**
+     * Searches the pending bytes for a line or header end, resuming where the last search
+     * of the same bytes stopped.
+     */
+    private int indexOfPending(Boundary boundary) {
+        int from = Math.max(start, scanned - boundary.length() + 1);
+        int index = boundary.indexOf(buffer, from, end);
+        scanned = index == -1 ? end : start;
+        return index;
+    }
+
+    private boolean process(boolean endOfInput) {
+        switch (status) {
+            case EXPECT_BOUNDARY_LINE:
+                return processBoundaryLine(endOfInput);
+            case EXPECT_HEADER_OR_END:
+                return processHeaderOrEnd(endOfInput);
+            case READING_HEADER:
+                return processHeader(endOfInput);
+            case READING_PART_DATA:
+                return processPartData(endOfInput);
+            default:
+                return false;
+        }
+    }
+
+    private boolean processBoundaryLine(boolean endOfInput) {
+        int index = indexOfPending(LINE_END);
+        if (index == -1) {
+            if (endOfInput || end - start == buffer.length) {
+                throw new IllegalArgumentException("no boundary could be found at the start of the stream");
+            }
+            return false;
+        }
+
+        int lineLength = index - start;
+        if (buffer.length < 3 * lineLength) {
+            throw new IllegalArgumentException("buffer size should be much larger than boundary marker length");
+        }
+
+        byte[] marker = new byte[lineLength + 2];
+        marker[0] = CR;
+        marker[1] = LF;
+        System.arraycopy(buffer, start, marker, 2, lineLength);
+        boundaryMarker = new Boundary(marker);
+
+        // The line end stays in the buffer, just like after any other boundary
+        start = index;
+        status = Status.EXPECT_HEADER_OR_END;
+        return true;
+    }
+
+    private boolean processHeaderOrEnd(boolean endOfInput) {
+        if (end - start < 2) {
+            if (endOfInput) {
+                throw new IllegalArgumentException("premature end of data, expected line break or close delimiter after boundary");
+            }
+            return false;
+        }
+
+        if (buffer[start] == CR && buffer[start + 1] == LF) {
+            start += 2;
+            status = Status.READING_HEADER;
+        } else if (buffer[start] == '-' && buffer[start + 1] == '-') {
+            endOfStream();
+        } else {
+            throw new IllegalArgumentException("premature end of data, expected line break or close delimiter after boundary");
+        }
+
+        return true;
+    }
+
+    private boolean processHeader(boolean endOfInput) {
+        int index = indexOfPending(HEADER_END);
+        if (index == -1) {
+            if (endOfInput || end - start == buffer.length) {
+                throw new IllegalArgumentException("could not find end of header");
+            }
+            return false;
+        }
+
+        Headers headers = Headers.fromBytes(Arrays.copyOfRange(buffer, start, index));
+        start = index + HEADER_END.length();
+        status = Status.READING_PART_DATA;
+        listener.partStarted(headers);
+
+        return true;
+    }
+
+    private boolean processPartData(boolean endOfInput) {
+        int index = boundaryMarker.indexOf(buffer, start, end);
+        if (index != -1) {
+            emit(index);
+            start = index + boundaryMarker.length();
+            status = Status.EXPECT_HEADER_OR_END;
+            listener.partEnded();
+            return true;
+        }
+
+        if (endOfInput) {
+            throw new IllegalArgumentException("premature end of data, could not find boundary");
+        }
+
+        // Must withhold some bytes because they could be the start of a boundary
+        int releasable = end - boundaryMarker.length() + 1;
+        if (releasable > start) {
+            emit(releasable);
+            start = releasable;
+        }
+
+        return false;
+    }
+
+    private void emit(int until) {
+        if (until > start) {
+            listener.partData(ByteBuffer.wrap(buffer, start, until - start).slice().asReadOnlyBuffer());
+        }
+    }
+
+    private void endOfStream() {
+        status = Status.END;
+        start = end;
+        close();
+        listener.streamEnded();
+    }
+}
@@ -0,0 +1,106 @@
+package dev.baecher.multipart;
+
+import dev.baecher.io.BoundaryInputStream;
+
+/**
+ * Decodes the quoted-printable transfer encoding of RFC 2045 incrementally. Soft line breaks
+ * are removed, including ones with trailing whitespace after the equals sign. Hex digits may
+ * be lower case. Other whitespace is passed through as is.
+ */
+class QuotedPrintableDecoder implements BoundaryInputStream.Decoder {
+    private enum State {LITERAL, ESCAPE, ESCAPE_WHITESPACE, HEX, SOFT_BREAK}
+
+    private State state = State.LITERAL;
+    private int highDigit;
+    private int decodedLength;
+
+    void reset() {
+        state = State.LITERAL;
+    }
+
+    @Override
+    public int decode(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) {
+        int o = dstOff;
+        int dstEnd = dstOff + dstLen;
+
+        int i = srcOff;
+        int srcEnd = srcOff + srcLen;
+        while (i < srcEnd && o < dstEnd) {
+            byte b = src[i++];
+
+            switch (state) {
+                case LITERAL:
+                    if (b == '=') {
+                        state = State.ESCAPE;
+                    } else {
+                        dst[o++] = b;
+                    }
+                    break;
+                case ESCAPE:
+                    if (b == ' ' || b == '\t') {
+                        state = State.ESCAPE_WHITESPACE;
+                    } else if (b == '\r' || b == '\n') {
+                        state = b == '\r' ? State.SOFT_BREAK : State.LITERAL;
+                    } else {
+                        highDigit = hexValue(b);
+                        state = State.HEX;
+                    }
+                    break;
+                case ESCAPE_WHITESPACE:
+                    if (b == '\r' || b == '\n') {
+                        state = b == '\r' ? State.SOFT_BREAK : State.LITERAL;
+                    } else if (b != ' ' && b != '\t') {
+                        throw new IllegalArgumentException("malformed quoted-printable data, whitespace after equals sign");
+                    }
+                    break;
+                case HEX:
+                    dst[o++] = (byte) (highDigit << 4 | hexValue(b));
+                    state = State.LITERAL;
+                    break;
+                case SOFT_BREAK:
+                    state = State.LITERAL;
+                    if (b != '\n') {
+                        // A bare CR ends the soft break, the byte is decoded normally
+                        --i;
+                    }
+                    break;
+            }
+        }
+
+        decodedLength = o - dstOff;
+        return i - srcOff;
+    }
+
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+
+        if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+
+        if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+
+        throw new IllegalArgumentException("malformed quoted-printable data, invalid escape sequence");
+    }
+
+    @Override
+    public int decodedLength() {
+        return decodedLength;
+    }
+
+    @Override
+    public int finish(byte[] dst, int off, int len) {
+        // The line break before the boundary belongs to the delimiter, so a trailing equals
+        // sign is a soft line break
+        if (state == State.HEX) {
+            throw new IllegalArgumentException("malformed quoted-printable data, incomplete escape sequence");
+        }
+
+        state = State.LITERAL;
+        return 0;
+    }
+}
@@ -1,130 +1,672 @@
 package dev.baecher.multipart;
 
+import dev.baecher.io.Boundary;
+import dev.baecher.io.BoundaryInputStream;
+import dev.baecher.io.BufferPool;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+import java.util.zip.Checksum;
+
+public class StreamingMultipartParser implements Iterator<StreamingMultipartParser.Part>, AutoCloseable {
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte[] CRLF = new byte[]{CR, LF};
+    private static final byte[] DASH_DASH = new byte[]{'-', '-'};
+    private static final Boundary LINE_END = new Boundary(CRLF);
+    private static final Boundary HEADER_END = new Boundary(new byte[]{CR, LF, CR, LF});
+    private static final int INITIAL_HEADER_BUFFER_SIZE = 0x400;
 
-public class StreamingMultipartParser implements Iterator<StreamingMultipartParser.Part> {
-    private final int CR = '\r';
-    private final int LF = '\n';
-    private final byte[] CRLF = new byte[]{CR, LF};
-    private final byte[] CRLFCRLF = new byte[]{CR, LF, CR, LF};
-    private final byte[] boundaryMarker;
-    private final Buffer buffer;
+    private final BoundaryInputStream input;
+    private final Boundary boundaryMarker;
+    private final int maxHeaderLength;
+    private final int maxHeaderCount;
+    private final int maxPartCount;
+    private final long maxPartLength;
+    private final long maxTotalLength;
+    private final boolean observing;
+    private int partCount;
+    private final BoundaryInputStream.Observer totalLengthObserver = new BoundaryInputStream.Observer() {
+        @Override
+        public void consumed(byte[] b, int off, int len) {
+            checkTotalLength(len);
+        }
+
+        @Override
+        public void consumed(ByteBuffer b) {
+            checkTotalLength(b.remaining());
+        }
+    };
+    private final boolean autoDrain;
+    private final boolean reuseParts;
+    private final ParserListener listener;
+    private final boolean timed;
+    private final MessageDigest digestPrototype;
+    private final Supplier<? extends Checksum> checksumFactory;
+    // The part this parser's data is nested in, or null at the top level
+    private final Part enclosingPart;
+    private byte[] headerBuffer;
+    private Part currentPart;
+    private boolean closed;
 
     private enum Status {EXPECT_HEADER_OR_END, READING_PART_DATA}
 
     private Status status;
 
+    public static class Builder {
+        private final BoundaryInputStream.Builder input;
+        private int bufferSize = 0x10000;
+        private int maxBufferSize;
+        private boolean autoDrain;
+        private boolean reuseParts;
+        private ParserListener listener = ParserListener.NONE;
+        private String digestAlgorithm;
+        private Supplier<? extends Checksum> checksumFactory;
+        private int maxHeaderLength = -1;
+        private int maxHeaderCount = Integer.MAX_VALUE;
+        private int maxPartCount = Integer.MAX_VALUE;
+        private long maxPartLength = Long.MAX_VALUE;
+        private long maxTotalLength = Long.MAX_VALUE;
+
+        private Builder(BoundaryInputStream.Builder input) {
+            this.input = input;
+        }
+
+        public Builder bufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Lets the buffer grow from {@link #bufferSize(int)} up to this size while long bodies
+         * are streamed, doubling every time a full buffer's worth of body has been read. A
+         * small initial size then keeps requests with only a few short fields cheap.
+         */
+        public Builder maxBufferSize(int maxBufferSize) {
+            this.maxBufferSize = maxBufferSize;
+            input.maxBufferSize(maxBufferSize);
+            return this;
+        }
+
+        /**
+         * When enabled, a grown buffer shrinks back towards the initial size at the end of
+         * a part, as far as the data that is already buffered allows.
+         */
+        public Builder shrinkBuffer(boolean shrinkBuffer) {
+            input.shrinkBuffer(shrinkBuffer);
+            return this;
+        }
+
+        /**
+         * When enabled, moving on to the next part skips whatever is left of the previous
+         * part's body instead of failing.
+         */
+        public Builder autoDrain(boolean autoDrain) {
+            this.autoDrain = autoDrain;
+            return this;
+        }
+
+        /**
+         * When enabled, {@link #next()} hands out the same {@link Part}, with the same body
+         * streams and {@link Headers} instance, for every part, so that parsing allocates
+         * nothing once warmed up. Parts and their headers are only valid until the next call
+         * to {@code next()} and must not be kept.
+         */
+        public Builder reuseParts(boolean reuseParts) {
+            this.reuseParts = reuseParts;
+            return this;
+        }
+
+        /**
+         * Sets the pool that the parser's buffer is taken from. The buffer goes back to the
+         * pool once the last part has been read or the parser is closed.
+         */
+        public Builder bufferPool(BufferPool bufferPool) {
+            input.bufferPool(bufferPool);
+            return this;
+        }
+
+        /**
+         * Whether a channel source reads into a direct buffer, which is the default. See
+         * {@link BoundaryInputStream.Builder#directBuffer(boolean)}.
+         */
+        public Builder directBuffer(boolean directBuffer) {
+            input.directBuffer(directBuffer);
+            return this;
+        }
+
+        /**
+         * When enabled, parts and body data are handed out as soon as they have arrived
+         * instead of after the buffer has been filled, so that time to first part does not
+         * depend on the buffer size. Meant for slow clients and interactive streaming.
+         */
+        public Builder lowLatency(boolean lowLatency) {
+            input.lowLatency(lowLatency);
+            return this;
+        }
+
+        /**
+         * Sets a listener for parser and source events, such as {@link ParserMetrics}.
+         */
+        public Builder listener(ParserListener listener) {
+            this.listener = listener;
+            input.listener(listener);
+            return this;
+        }
+
+        /**
+         * Computes a {@link MessageDigest} such as SHA-256 over every body while it is being
+         * read, available from {@link Part#getDigest()}.
+         */
+        public Builder digest(String algorithm) {
+            this.digestAlgorithm = algorithm;
+            return this;
+        }
+
+        /**
+         * Computes a checksum such as {@link java.util.zip.CRC32C} over every body while it
+         * is being read, available from {@link Part#getChecksum()}.
+         */
+        public Builder checksum(Supplier<? extends Checksum> checksumFactory) {
+            this.checksumFactory = checksumFactory;
+            return this;
+        }
+
+        /**
+         * Limits the length of a part's header block. Defaults to the (maximum) buffer size.
+         */
+        public Builder maxHeaderLength(int maxHeaderLength) {
+            this.maxHeaderLength = maxHeaderLength;
+            return this;
+        }
+
+        /**
+         * Limits the number of header lines per part.
+         */
+        public Builder maxHeaderCount(int maxHeaderCount) {
+            this.maxHeaderCount = maxHeaderCount;
+            return this;
+        }
+
+        public Builder maxPartCount(int maxPartCount) {
+            this.maxPartCount = maxPartCount;
+            return this;
+        }
+
+        /**
+         * Limits the body length of every part. Checked as the body is consumed, so reading
+         * fails as soon as the limit is crossed.
+         */
+        public Builder maxPartLength(long maxPartLength) {
+            this.maxPartLength = maxPartLength;
+            return this;
+        }
+
+        /**
+         * Limits the total number of bytes taken from the source, including headers and
+         * boundaries.
+         */
+        public Builder maxTotalLength(long maxTotalLength) {
+            this.maxTotalLength = maxTotalLength;
+            return this;
+        }
+
+        public StreamingMultipartParser build() throws IOException {
+            return new StreamingMultipartParser(this);
+        }
+    }
+
+    public static Builder builder(InputStream source) {
+        return new Builder(BoundaryInputStream.builder(source));
+    }
+
+    /**
+     * Reads from a channel straight into the parser's buffer, without wrapping it in
+     * an {@link InputStream}. The buffer is direct unless configured otherwise, so that
+     * channels backed by native I/O need no intermediate copy. The channel must be in
+     * blocking mode.
+     */
+    public static Builder builder(ReadableByteChannel source) {
+        return new Builder(BoundaryInputStream.builder(source));
+    }
+
     public StreamingMultipartParser(InputStream is) throws IOException {
-        this(is, 0x10000);
+        this(builder(is));
     }
 
     public StreamingMultipartParser(InputStream is, int bufferSize) throws IOException {
-        buffer = new Buffer(is, bufferSize);
-        buffer.refill();
+        this(builder(is).bufferSize(bufferSize));
+    }
 
-        int off = buffer.find(CRLF);
-        if (off < 0) {
-            throw new IllegalArgumentException("no boundary could be found at the start of the stream");
+    private StreamingMultipartParser(Builder builder) throws IOException {
+        if (builder.digestAlgorithm == null) {
+            digestPrototype = null;
+        } else {
+            try {
+                digestPrototype = MessageDigest.getInstance(builder.digestAlgorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException("unknown digest algorithm: " + builder.digestAlgorithm, e);
+            }
         }
+        checksumFactory = builder.checksumFactory;
+        enclosingPart = null;
+
+        int bufferSize = builder.bufferSize;
+        input = builder.input.bufferSize(bufferSize).boundary(LINE_END).build();
+        maxHeaderLength = builder.maxHeaderLength < 0
+                ? Math.max(bufferSize, builder.maxBufferSize)
+                : builder.maxHeaderLength;
+        maxHeaderCount = builder.maxHeaderCount;
+        maxPartCount = builder.maxPartCount;
+        maxPartLength = builder.maxPartLength;
+        maxTotalLength = builder.maxTotalLength;
+        observing = digestPrototype != null || checksumFactory != null
+                || maxPartLength != Long.MAX_VALUE || maxTotalLength != Long.MAX_VALUE;
+        autoDrain = builder.autoDrain;
+        reuseParts = builder.reuseParts;
+        listener = builder.listener;
+        timed = listener != ParserListener.NONE;
+        headerBuffer = new byte[Math.min(INITIAL_HEADER_BUFFER_SIZE, maxHeaderLength)];
+
+        byte[] firstLine;
+        try {
+            firstLine = input.readNBytes(bufferSize);
+            if (!input.startsWith(CRLF)) {
+                throw new IllegalArgumentException("no boundary could be found at the start of the stream");
+            }
 
-        if (buffer.getBufferSize() < 3 * off) {
+            if (bufferSize < 3 * firstLine.length) {
+                throw new IllegalArgumentException("buffer size should be much larger than boundary marker length");
+            }
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+
+        byte[] marker = new byte[firstLine.length + 2];
+        marker[0] = CR;
+        marker[1] = LF;
+        System.arraycopy(firstLine, 0, marker, 2, firstLine.length);
+        boundaryMarker = new Boundary(marker);
+
+        status = Status.EXPECT_HEADER_OR_END;
+    }
+
+    /**
+     * Creates a parser for the multipart body of the given part, sharing the parent's
+     * stream and settings. Skips the preamble, if any, and the first delimiter.
+     */
+    private StreamingMultipartParser(StreamingMultipartParser parent, Part enclosingPart, String boundary)
+            throws IOException {
+        input = parent.input;
+        maxHeaderLength = parent.maxHeaderLength;
+        maxHeaderCount = parent.maxHeaderCount;
+        maxPartCount = parent.maxPartCount;
+        maxPartLength = parent.maxPartLength;
+        maxTotalLength = parent.maxTotalLength;
+        observing = parent.observing;
+        autoDrain = parent.autoDrain;
+        reuseParts = parent.reuseParts;
+        listener = parent.listener;
+        timed = parent.timed;
+        digestPrototype = parent.digestPrototype;
+        checksumFactory = parent.checksumFactory;
+        this.enclosingPart = enclosingPart;
+        headerBuffer = new byte[Math.min(INITIAL_HEADER_BUFFER_SIZE, maxHeaderLength)];
+
+        byte[] dashBoundary = ("--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        if (input.getBufferSize() < 3 * dashBoundary.length) {
             throw new IllegalArgumentException("buffer size should be much larger than boundary marker length");
         }
 
-        boundaryMarker = new byte[off + 2];
-        boundaryMarker[0] = CR;
-        boundaryMarker[1] = LF;
-        buffer.consume(boundaryMarker, 2, off);
+        byte[] marker = new byte[dashBoundary.length + 2];
+        marker[0] = CR;
+        marker[1] = LF;
+        System.arraycopy(dashBoundary, 0, marker, 2, dashBoundary.length);
+        boundaryMarker = new Boundary(marker);
+
+        input.pushBoundary(boundaryMarker);
+        try {
+            // The first delimiter has no line break before it unless there is a preamble
+            if (input.startsWith(dashBoundary)) {
+                input.skip(dashBoundary.length);
+            } else {
+                input.skipToBoundary();
+                if (!input.skipBoundary()) {
+                    throw new IllegalArgumentException("no boundary could be found in nested body");
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            input.popBoundary();
+            throw e;
+        }
 
         status = Status.EXPECT_HEADER_OR_END;
     }
 
     @Override
     public boolean hasNext() {
-        if (status != Status.EXPECT_HEADER_OR_END) {
-            throw new IllegalStateException("must exhaust previous part stream before dealing with next part");
+        if (closed) {
+            return false;
         }
 
         try {
-            buffer.refill();
-            return buffer.startsWith(CRLF);
+            if (status != Status.EXPECT_HEADER_OR_END) {
+                if (!autoDrain) {
+                    throw new IllegalStateException("must exhaust previous part stream before dealing with next part");
+                }
+                currentPart.skip();
+            }
+
+            if (!atNextPart()) {
+                finish();
+                return false;
+            }
+
+            return true;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Skips the rest of the current part, if any, and all parts after it.
+     */
+    public void skipRemaining() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        if (status == Status.READING_PART_DATA) {
+            currentPart.skip();
+        }
+
+        // Parts that are skipped here never get an observer of their own. Nested bodies are
+        // still covered by the enclosing part's.
+        boolean limitTotal = enclosingPart == null && maxTotalLength != Long.MAX_VALUE;
+        if (limitTotal) {
+            input.setObserver(totalLengthObserver);
+        }
+        try {
+            while (atNextPart()) {
+                countPart();
+                input.setBoundary(boundaryMarker);
+                input.skipToBoundary();
+                if (!input.skipBoundary()) {
+                    throw new IllegalArgumentException("premature end of data, could not find boundary");
+                }
+            }
+        } finally {
+            if (limitTotal) {
+                input.setObserver(null);
+            }
+        }
+
+        finish();
+    }
+
+    /**
+     * Returns the buffer to its pool. Happens automatically once the last part has been
+     * read. The source is left open. A nested parser hands the stream back to its parent
+     * instead, which continues after whatever was left unread.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        if (enclosingPart == null) {
+            input.close();
+            return;
+        }
+
+        if (currentPart != null) {
+            currentPart.closeNestedParser();
+        }
+        input.popBoundary();
+        if (observing) {
+            input.setObserver(enclosingPart.observer);
+        }
+    }
+
+    /**
+     * Tells whether a part follows the delimiter the stream is positioned after, as opposed to
+     * it being the close delimiter. Anything else means the data is malformed or cut off.
+     */
+    private boolean atNextPart() throws IOException {
+        if (input.startsWith(CRLF)) {
+            return true;
+        }
+        if (input.startsWith(DASH_DASH)) {
+            return false;
+        }
+
+        throw new IllegalArgumentException("premature end of data, expected line break or close delimiter after boundary");
+    }
+
+    /**
+     * Closes the parser after the last part. The epilogue of a nested body is skipped,
+     * which ends the enclosing part.
+     */
+    private void finish() throws IOException {
+        close();
+
+        if (enclosingPart != null) {
+            enclosingPart.skip();
+        }
+    }
+
     @Override
     public Part next() {
         if (!hasNext()) {
             throw new NoSuchElementException();
         }
 
-        try {
-            buffer.refill();
-            buffer.skip(CRLF.length);
+        countPart();
 
-            int off = buffer.find(CRLFCRLF);
-            if (off < 0) {
-                throw new IllegalArgumentException("could not find end of header");
+        try {
+            input.setBoundary(LINE_END);
+            if (!input.skipBoundary()) {
+                // Only in nested bodies, where the enclosing boundary comes first
+                throw new IllegalArgumentException("premature end of data, could not find boundary");
             }
 
-            Headers headers = Headers.fromBytes(buffer.consume(off));
-            buffer.skip(CRLFCRLF.length);
+            long headerOffset = input.getPosition();
+            long start = timed ? System.nanoTime() : 0;
+            input.setBoundary(HEADER_END);
+            int headerLength = readHeaderBlock();
+            checkTotalLength(0);
+            Headers headers;
+            if (!reuseParts) {
+                headers = Headers.fromBytes(Arrays.copyOf(headerBuffer, headerLength));
+            } else if (currentPart == null) {
+                headers = Headers.fromBytes(headerBuffer, headerLength);
+            } else {
+                headers = currentPart.headers;
+                headers.reset(headerBuffer, headerLength);
+            }
+            if (headers.count() > maxHeaderCount) {
+                throw new LimitExceededException(LimitExceededException.Limit.HEADER_COUNT, maxHeaderCount);
+            }
+            if (timed) {
+                listener.headersParsed(headers, headerLength, System.nanoTime() - start);
+            }
 
+            input.setBoundary(boundaryMarker);
             status = Status.READING_PART_DATA;
+            if (reuseParts && currentPart != null) {
+                currentPart.reset(headers, headerOffset, input.getPosition());
+            } else {
+                currentPart = new Part(headers, headerOffset, input.getPosition());
+            }
+            if (timed) {
+                currentPart.startTime = System.nanoTime();
+            }
+            if (observing) {
+                currentPart.startObserving();
+            }
 
-            return new Part(headers);
+            return currentPart;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Reads the header block into the header buffer and returns its length.
+     */
+    private int readHeaderBlock() throws IOException {
+        int length = 0;
+
+        while (true) {
+            if (length == headerBuffer.length) {
+                if (length >= maxHeaderLength) {
+                    if (input.read() != -1) {
+                        throw new LimitExceededException(LimitExceededException.Limit.HEADER_LENGTH, maxHeaderLength);
+                    }
+                    break;
+                }
+                headerBuffer = Arrays.copyOf(headerBuffer, Math.min(2 * length, maxHeaderLength));
+            }
+
+            int bytesRead = input.read(headerBuffer, length, headerBuffer.length - length);
+            if (bytesRead < 0) {
+                break;
+            }
+            length += bytesRead;
+        }
+
+        if (!input.skipBoundary()) {
+            throw new IllegalArgumentException("could not find end of header");
+        }
+
+        return length;
+    }
+
+    private void countPart() {
+        if (partCount == maxPartCount) {
+            throw new LimitExceededException(LimitExceededException.Limit.PART_COUNT, maxPartCount);
+        }
+        partCount++;
+    }
+
+    private void checkTotalLength(int pendingLength) {
+        if (input.getPosition() + pendingLength > maxTotalLength) {
+            throw new LimitExceededException(LimitExceededException.Limit.TOTAL_LENGTH, maxTotalLength);
+        }
+    }
+
     public class Part {
-        private final Headers headers;
+        private Headers headers;
+        private long headerOffset;
+        private long bodyOffset;
         private final InputStream inputStream;
-        private int partLength;
-        private boolean endInSight;
+        private final BoundaryInputStream.Observer observer = new BoundaryInputStream.Observer() {
+            @Override
+            public void consumed(byte[] b, int off, int len) {
+                Part.this.consumed(b, off, len);
+            }
+
+            @Override
+            public void consumed(ByteBuffer b) {
+                Part.this.consumed(b);
+            }
+        };
+        private InputStream decodedInputStream;
+        private Base64Decoder base64Decoder;
+        private QuotedPrintableDecoder quotedPrintableDecoder;
+        private DecodingInputStream base64InputStream;
+        private DecodingInputStream quotedPrintableInputStream;
         private boolean streamExhausted;
+        private long startTime;
+        private MessageDigest digest;
+        private Checksum checksum;
+        private byte[] digestValue;
+        private StreamingMultipartParser nestedParser;
 
-        private void refill() throws IOException {
-            buffer.refill();
+        boolean isExhausted() {
+            return streamExhausted;
+        }
 
-            int off = buffer.find(boundaryMarker);
-            if (off < 0) {
-                if (buffer.isEof()) {
-                    throw new IllegalArgumentException("premature end of data, could not find boundary");
-                }
+        /**
+         * Position of the header block relative to the start of the source.
+         */
+        long headerOffset() {
+            return headerOffset;
+        }
 
-                // Must leave some extra space in case part of the boundary is cut off at the end of the buffer.
-                partLength = buffer.getLength() - boundaryMarker.length;
-            } else {
-                partLength = off;
-                endInSight = true;
+        /**
+         * Position of the body relative to the start of the source.
+         */
+        long bodyOffset() {
+            return bodyOffset;
+        }
+
+        private void checkStatus() {
+            if (streamExhausted) {
+                throw new IllegalStateException("cannot read from stream any more");
+            }
+
+            if (closed && enclosingPart != null) {
+                throw new IllegalStateException("nested parser has been closed");
+            }
+
+            closeNestedParser();
+        }
+
+        private void closeNestedParser() {
+            if (nestedParser != null) {
+                nestedParser.close();
+            }
+        }
+
+        private void endOfPart() throws IOException {
+            long bodyLength = input.getPosition() - bodyOffset;
+            if (!input.skipBoundary()) {
+                throw new IllegalArgumentException("premature end of data, could not find boundary");
+            }
+
+            streamExhausted = true;
+            status = Status.EXPECT_HEADER_OR_END;
+
+            if (observing) {
+                input.setObserver(enclosingPart == null ? null : enclosingPart.observer);
+                digestValue = digest == null ? null : digest.digest();
+            }
+
+            if (timed) {
+                listener.partEnded(headers, bodyLength, System.nanoTime() - startTime);
             }
         }
 
-        private Part(Headers headers) {
+        private Part(Headers headers, long headerOffset, long bodyOffset) {
             this.headers = headers;
+            this.headerOffset = headerOffset;
+            this.bodyOffset = bodyOffset;
             streamExhausted = false;
             inputStream = new InputStream() {
                 final byte[] oneByte = new byte[1];
 
-                private void checkStatus() {
-                    if (streamExhausted) {
-                        throw new IllegalStateException("cannot read from stream any more");
-                    }
-                }
-
                 @Override
                 public int read() throws IOException {
                     int bytesRead = read(oneByte, 0, 1);
                     if (bytesRead <= 0) {
                         return -1;
                     } else {
-                        return oneByte[0];
+                        return oneByte[0] & 0xff;
                     }
                 }
 
@@ -132,31 +674,349 @@ public class StreamingMultipartParser implements Iterator<StreamingMultipartPars
                 public int read(byte[] b, int off, int len) throws IOException {
                     checkStatus();
 
-                    if (partLength == 0) {
-                        if (endInSight) {
-                            streamExhausted = true;
-                            buffer.skip(boundaryMarker.length);
-                            status = Status.EXPECT_HEADER_OR_END;
-                            return -1;
-                        }
-                        refill();
+                    int bytesRead = input.read(b, off, len);
+                    if (bytesRead < 0) {
+                        endOfPart();
                     }
 
-                    int bytesRead = Math.min(len, partLength);
-                    buffer.consume(b, off, bytesRead);
-                    partLength -= bytesRead;
-
                     return bytesRead;
                 }
+
+                @Override
+                public long transferTo(OutputStream out) throws IOException {
+                    return Part.this.transferTo(out);
+                }
+
+                /**
+                 * Returns the number of body bytes that are already buffered.
+                 */
+                @Override
+                public int available() throws IOException {
+                    return streamExhausted ? 0 : input.available();
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    checkStatus();
+
+                    return input.skip(n);
+                }
+
+                @Override
+                public byte[] readNBytes(int len) throws IOException {
+                    checkStatus();
+
+                    byte[] b = input.readNBytes(len);
+                    if (b.length < len) {
+                        endOfPart();
+                    }
+
+                    return b;
+                }
+
+                @Override
+                public byte[] readAllBytes() throws IOException {
+                    return readNBytes(Integer.MAX_VALUE - 8);
+                }
             };
         }
 
+        /**
+         * Turns this instance into the given part, keeping its streams and decoders.
+         */
+        private void reset(Headers headers, long headerOffset, long bodyOffset) {
+            this.headers = headers;
+            this.headerOffset = headerOffset;
+            this.bodyOffset = bodyOffset;
+            streamExhausted = false;
+            decodedInputStream = null;
+            digestValue = null;
+            nestedParser = null;
+        }
+
+        private void startObserving() {
+            if (digestPrototype != null) {
+                if (digest == null) {
+                    digest = newDigest();
+                } else {
+                    digest.reset();
+                }
+            }
+            if (checksumFactory != null) {
+                if (checksum == null) {
+                    checksum = checksumFactory.get();
+                } else {
+                    checksum.reset();
+                }
+            }
+
+            input.setObserver(observer);
+        }
+
+        private void consumed(byte[] b, int off, int len) {
+            // Runs before the bytes count as consumed, so a read that would cross a limit
+            // fails instead of returning data
+            checkPartLength(len);
+            checkTotalLength(len);
+
+            if (digest != null) {
+                digest.update(b, off, len);
+            }
+            if (checksum != null) {
+                checksum.update(b, off, len);
+            }
+        }
+
+        private void consumed(ByteBuffer b) {
+            checkPartLength(b.remaining());
+            checkTotalLength(b.remaining());
+
+            int start = b.position();
+            if (digest != null) {
+                digest.update(b);
+                b.position(start);
+            }
+            if (checksum != null) {
+                checksum.update(b);
+            }
+        }
+
+        /**
+         * Checks the body length of this part and of the parts that it is nested in.
+         */
+        private void checkPartLength(int pendingLength) {
+            if (input.getPosition() + pendingLength - bodyOffset > maxPartLength) {
+                throw new LimitExceededException(LimitExceededException.Limit.PART_LENGTH, maxPartLength);
+            }
+
+            if (enclosingPart != null) {
+                enclosingPart.checkPartLength(pendingLength);
+            }
+        }
+
+        private MessageDigest newDigest() {
+            try {
+                return (MessageDigest) digestPrototype.clone();
+            } catch (CloneNotSupportedException e) {
+                try {
+                    return MessageDigest.getInstance(digestPrototype.getAlgorithm(), digestPrototype.getProvider());
+                } catch (NoSuchAlgorithmException unexpected) {
+                    throw new IllegalStateException(unexpected);
+                }
+            }
+        }
+
         public Headers getHeaders() {
             return headers;
         }
 
+        /**
+         * Returns the digest of the body as configured with {@link Builder#digest(String)}.
+         * Only available once the body has been read, transferred or skipped to the end.
+         */
+        public byte[] getDigest() {
+            if (digest == null) {
+                throw new IllegalStateException("no digest configured");
+            }
+
+            if (nestedParser != null) {
+                throw new IllegalStateException("body has been parsed as nested multipart");
+            }
+
+            if (!streamExhausted) {
+                throw new IllegalStateException("body has not been read to the end");
+            }
+
+            return digestValue.clone();
+        }
+
+        /**
+         * Returns the checksum of the body as configured with {@link Builder#checksum}.
+         * Only available once the body has been read, transferred or skipped to the end.
+         */
+        public long getChecksum() {
+            if (checksum == null) {
+                throw new IllegalStateException("no checksum configured");
+            }
+
+            if (nestedParser != null) {
+                throw new IllegalStateException("body has been parsed as nested multipart");
+            }
+
+            if (!streamExhausted) {
+                throw new IllegalStateException("body has not been read to the end");
+            }
+
+            return checksum.getValue();
+        }
+
         public InputStream getInputStream() {
             return inputStream;
         }
+
+        /**
+         * Returns a stream over the body with its Content-Transfer-Encoding removed. Base64
+         * and quoted-printable are decoded straight from the parser's buffer into the array
+         * passed to {@code read}, without intermediate buffers. Bodies in identity encodings
+         * such as 8bit or binary are returned as is. Digests, checksums and limits apply to
+         * the body as transmitted.
+         */
+        public InputStream getDecodedInputStream() {
+            if (decodedInputStream == null) {
+                String encoding = headers.getHeaderValue("Content-Transfer-Encoding");
+                encoding = encoding == null ? "" : encoding.trim();
+
+                if (encoding.equalsIgnoreCase("base64")) {
+                    if (base64InputStream == null) {
+                        base64Decoder = new Base64Decoder();
+                        base64InputStream = new DecodingInputStream(base64Decoder);
+                    } else {
+                        base64Decoder.reset();
+                    }
+                    decodedInputStream = base64InputStream;
+                } else if (encoding.equalsIgnoreCase("quoted-printable")) {
+                    if (quotedPrintableInputStream == null) {
+                        quotedPrintableDecoder = new QuotedPrintableDecoder();
+                        quotedPrintableInputStream = new DecodingInputStream(quotedPrintableDecoder);
+                    } else {
+                        quotedPrintableDecoder.reset();
+                    }
+                    decodedInputStream = quotedPrintableInputStream;
+                } else if (encoding.isEmpty() || encoding.equalsIgnoreCase("7bit")
+                        || encoding.equalsIgnoreCase("8bit") || encoding.equalsIgnoreCase("binary")) {
+                    decodedInputStream = inputStream;
+                } else {
+                    throw new IllegalArgumentException("unsupported content transfer encoding: " + encoding);
+                }
+            }
+
+            return decodedInputStream;
+        }
+
+        /**
+         * Returns a parser for a body that is multipart itself, as declared by a multipart
+         * Content-Type such as multipart/mixed (RFC 2046 nesting). It reads from this
+         * parser's buffer and searches for its own boundary and this part's in the same
+         * pass. Settings and limits carry over, with part lengths also counted towards this
+         * part. Once the nested parser has no more parts, the rest of this part is skipped,
+         * so that this parser can move on. Reading from this part before that closes the
+         * nested parser and continues after whatever it left unread. No digest or checksum
+         * is available for a part parsed this way.
+         */
+        public StreamingMultipartParser openNestedParser() throws IOException {
+            checkStatus();
+
+            if (input.getPosition() != bodyOffset) {
+                throw new IllegalStateException("body has already been read from");
+            }
+
+            ContentType contentType = headers.getContentType();
+            if (contentType == null || !contentType.isMultipart()) {
+                throw new IllegalStateException("part is not multipart");
+            }
+
+            String boundary = contentType.getBoundary();
+            if (boundary == null || boundary.isEmpty()) {
+                throw new IllegalArgumentException("multipart content type without boundary");
+            }
+
+            nestedParser = new StreamingMultipartParser(StreamingMultipartParser.this, this, boundary);
+            return nestedParser;
+        }
+
+        /**
+         * Discards the rest of the body without copying it and returns the number of
+         * bytes skipped.
+         */
+        public long skip() throws IOException {
+            checkStatus();
+
+            long bytesSkipped = input.skipToBoundary();
+            endOfPart();
+
+            return bytesSkipped;
+        }
+
+        /**
+         * Writes the rest of the body to the output directly from the parser's buffer,
+         * without an intermediate copy, and returns the number of bytes written.
+         */
+        public long transferTo(OutputStream out) throws IOException {
+            checkStatus();
+
+            long bytesWritten = input.transferTo(out);
+            endOfPart();
+
+            return bytesWritten;
+        }
+
+        /**
+         * Like {@link #transferTo(OutputStream)} but for channels such as a
+         * {@link java.nio.channels.FileChannel}. The channel must be in blocking mode.
+         */
+        public long transferTo(WritableByteChannel out) throws IOException {
+            checkStatus();
+
+            long bytesWritten = input.transferTo(out);
+            endOfPart();
+
+            return bytesWritten;
+        }
+
+        private class DecodingInputStream extends InputStream {
+            private final BoundaryInputStream.Decoder decoder;
+            private final byte[] oneByte = new byte[1];
+
+            private DecodingInputStream(BoundaryInputStream.Decoder decoder) {
+                this.decoder = decoder;
+            }
+
+            @Override
+            public int read() throws IOException {
+                return read(oneByte, 0, 1) == -1 ? -1 : oneByte[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                checkStatus();
+
+                int bytesRead = input.read(decoder, b, off, len);
+                if (bytesRead < 0) {
+                    endOfPart();
+                }
+
+                return bytesRead;
+            }
+        }
+
+        /**
+         * Reads body bytes into a (possibly direct) buffer. Returns -1 at the end of the part.
+         */
+        public int read(ByteBuffer dst) throws IOException {
+            checkStatus();
+
+            int bytesRead = input.read(dst);
+            if (bytesRead < 0) {
+                endOfPart();
+            }
+
+            return bytesRead;
+        }
+
+        /**
+         * Returns the next chunk of the body as a read-only view into the parser's buffer,
+         * without copying. The view is only valid until the next read from this parser.
+         * Returns null at the end of the part.
+         */
+        public ByteBuffer readBuffer(int maxLength) throws IOException {
+            checkStatus();
+
+            ByteBuffer chunk = input.readBuffer(maxLength);
+            if (chunk == null) {
+                endOfPart();
+            }
+
+            return chunk;
+        }
     }
 }
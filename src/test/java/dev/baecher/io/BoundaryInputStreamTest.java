@@ -0,0 +1,475 @@
+package dev.baecher.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundaryInputStreamTest {
+    private InputStream inputStreamFromString(String s) {
+        return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String readString(InputStream is) throws IOException {
+        return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testReadWithoutBoundary() throws IOException {
+        BoundaryInputStream bis = BoundaryInputStream.builder(inputStreamFromString("hello world")).bufferSize(4).build();
+        assertEquals("hello world", readString(bis));
+        assertEquals(-1, bis.read());
+    }
+
+    @Test
+    void testReadUntilBoundary() throws IOException {
+        for (int bufferSize = 3; bufferSize < 30; bufferSize++) {
+            BoundaryInputStream bis = BoundaryInputStream
+                    .builder(inputStreamFromString("first--second--third"))
+                    .bufferSize(bufferSize)
+                    .boundary("--".getBytes(StandardCharsets.UTF_8))
+                    .build();
+
+            assertEquals("first", readString(bis));
+            assertTrue(bis.skipBoundary());
+            assertEquals("second", readString(bis));
+            assertTrue(bis.skipBoundary());
+            assertEquals("third", readString(bis));
+            assertFalse(bis.skipBoundary());
+        }
+    }
+
+    @Test
+    void testSkipAndAvailable() throws IOException {
+        for (int bufferSize = 3; bufferSize < 30; bufferSize++) {
+            BoundaryInputStream bis = BoundaryInputStream
+                    .builder(inputStreamFromString("first--second--third"))
+                    .bufferSize(bufferSize)
+                    .boundary("--".getBytes(StandardCharsets.UTF_8))
+                    .build();
+
+            assertEquals(0, bis.available());
+            assertEquals(2, bis.skip(2));
+            assertTrue(bis.available() <= 3);
+            assertEquals(3, bis.skip(100));
+            assertEquals(0, bis.available());
+            assertTrue(bis.skipBoundary());
+            assertArrayEquals("sec".getBytes(StandardCharsets.UTF_8), bis.readNBytes(3));
+            assertArrayEquals("ond".getBytes(StandardCharsets.UTF_8), bis.readNBytes(100));
+            assertTrue(bis.skipBoundary());
+            assertEquals(5, bis.skip(100));
+            assertEquals(0, bis.skip(100));
+        }
+    }
+
+    @Test
+    void testSwitchBoundary() throws IOException {
+        BoundaryInputStream bis = BoundaryInputStream
+                .builder(inputStreamFromString("key: value\r\n\r\nbody\r\n--b"))
+                .bufferSize(8)
+                .boundary(new Boundary("\r\n\r\n".getBytes(StandardCharsets.UTF_8)))
+                .build();
+
+        assertEquals("key: value", readString(bis));
+        assertTrue(bis.skipBoundary());
+
+        bis.setBoundary("\r\n--b".getBytes(StandardCharsets.UTF_8));
+        assertEquals("body", readString(bis));
+        assertTrue(bis.skipBoundary());
+        assertEquals(-1, bis.read());
+    }
+
+    @Test
+    void testPushBoundary() throws IOException {
+        for (int bufferSize = 4; bufferSize < 30; bufferSize++) {
+            for (boolean lowLatency : new boolean[]{false, true}) {
+                BoundaryInputStream bis = BoundaryInputStream
+                        .builder(new TricklingInputStream("first||second##|third||fourth".getBytes(StandardCharsets.UTF_8), 3))
+                        .bufferSize(bufferSize)
+                        .lowLatency(lowLatency)
+                        .boundary("##".getBytes(StandardCharsets.UTF_8))
+                        .build();
+
+                bis.pushBoundary(new Boundary("||".getBytes(StandardCharsets.UTF_8)));
+                assertEquals("first", readString(bis));
+                assertTrue(bis.skipBoundary());
+                assertEquals("second", readString(bis));
+                assertFalse(bis.skipBoundary());
+
+                bis.setBoundary("#".getBytes(StandardCharsets.UTF_8));
+                assertFalse(bis.skipBoundary());
+
+                bis.popBoundary();
+                assertEquals(-1, bis.read());
+                assertTrue(bis.skipBoundary());
+                assertEquals("|third||fourth", readString(bis));
+            }
+        }
+
+        BoundaryInputStream bis = BoundaryInputStream.builder(inputStreamFromString("")).build();
+        assertThrows(IllegalStateException.class, bis::popBoundary);
+        assertThrows(IllegalStateException.class, () -> bis.pushBoundary(new Boundary(new byte[]{'-'})));
+    }
+
+    @Test
+    void testChannelSource() throws IOException {
+        BoundaryInputStream bis = BoundaryInputStream
+                .builder(Channels.newChannel(inputStreamFromString("first--second")))
+                .bufferSize(5)
+                .boundary("--".getBytes(StandardCharsets.UTF_8))
+                .build();
+
+        assertEquals("first", readString(bis));
+        assertTrue(bis.skipBoundary());
+        assertEquals("second", readString(bis));
+    }
+
+    @Test
+    void testDirectBuffer() throws IOException {
+        StripedBufferPool pool = StripedBufferPool.builder().stripes(1).build();
+        ByteArrayOutputStream observed = new ByteArrayOutputStream();
+        BoundaryInputStream bis = BoundaryInputStream
+                .builder(Channels.newChannel(inputStreamFromString("0123456789--abcdefghij--ABCDEFGHIJ--rest")))
+                .bufferSize(7)
+                .bufferPool(pool)
+                .boundary("--".getBytes(StandardCharsets.UTF_8))
+                .build();
+        bis.setObserver(observed::write);
+
+        ByteBuffer chunk = bis.readBuffer(4);
+        assertTrue(chunk.isDirect());
+        assertEquals("0123", StandardCharsets.UTF_8.decode(chunk).toString());
+        assertEquals("456789", readString(bis));
+        assertTrue(bis.skipBoundary());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(10, bis.transferTo(out));
+        assertEquals("abcdefghij", out.toString(StandardCharsets.UTF_8));
+        assertTrue(bis.skipBoundary());
+
+        // A decoder that lower-cases, fed straight from direct memory
+        BoundaryInputStream.Decoder lowerCase = new BoundaryInputStream.Decoder() {
+            private int decodedLength;
+
+            @Override
+            public int decode(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) {
+                decodedLength = Math.min(srcLen, dstLen);
+                for (int i = 0; i < decodedLength; i++) {
+                    dst[dstOff + i] = (byte) Character.toLowerCase(src[srcOff + i]);
+                }
+                return decodedLength;
+            }
+
+            @Override
+            public int decodedLength() {
+                return decodedLength;
+            }
+
+            @Override
+            public int finish(byte[] dst, int off, int len) {
+                return 0;
+            }
+        };
+        StringBuilder decoded = new StringBuilder();
+        byte[] b = new byte[3];
+        for (int n; (n = bis.read(lowerCase, b, 0, b.length)) != -1; ) {
+            decoded.append(new String(b, 0, n, StandardCharsets.UTF_8));
+        }
+        assertEquals("abcdefghij", decoded.toString());
+        assertTrue(bis.skipBoundary());
+        assertEquals("rest", readString(bis));
+
+        assertEquals("0123456789abcdefghijABCDEFGHIJrest", observed.toString(StandardCharsets.UTF_8));
+
+        bis.close();
+        assertEquals(1, pool.getPooledCount());
+        assertTrue(pool.acquireDirect(7).isDirect());
+        assertEquals(1, pool.getHits());
+
+        assertThrows(IllegalArgumentException.class, () -> BoundaryInputStream
+                .builder(inputStreamFromString(""))
+                .directBuffer(true)
+                .build());
+    }
+
+    @Test
+    void testReadIntoByteBuffer() throws IOException {
+        BoundaryInputStream bis = BoundaryInputStream
+                .builder(inputStreamFromString("first--second"))
+                .bufferSize(4)
+                .boundary("--".getBytes(StandardCharsets.UTF_8))
+                .build();
+
+        ByteBuffer dst = ByteBuffer.allocateDirect(16);
+        while (bis.read(dst) != -1) {
+            assertEquals(0, bis.read(ByteBuffer.allocate(0)));
+        }
+
+        dst.flip();
+        assertEquals("first", StandardCharsets.UTF_8.decode(dst).toString());
+    }
+
+    @Test
+    void testReadBuffer() throws IOException {
+        BoundaryInputStream bis = BoundaryInputStream
+                .builder(inputStreamFromString("0123456789--rest"))
+                .bufferSize(7)
+                .boundary("--".getBytes(StandardCharsets.UTF_8))
+                .build();
+
+        StringBuilder sb = new StringBuilder();
+        for (ByteBuffer chunk; (chunk = bis.readBuffer(3)) != null; ) {
+            assertTrue(chunk.isReadOnly());
+            assertTrue(chunk.remaining() <= 3);
+            sb.append(StandardCharsets.UTF_8.decode(chunk));
+        }
+
+        assertEquals("0123456789", sb.toString());
+        assertTrue(bis.skipBoundary());
+        assertEquals("rest", readString(bis));
+        assertThrows(IllegalArgumentException.class, () -> bis.readBuffer(0));
+    }
+
+    @Test
+    void testTransferTo() throws IOException {
+        for (int bufferSize = 3; bufferSize < 20; bufferSize++) {
+            BoundaryInputStream bis = BoundaryInputStream
+                    .builder(inputStreamFromString("0123456789--rest"))
+                    .bufferSize(bufferSize)
+                    .boundary("--".getBytes(StandardCharsets.UTF_8))
+                    .build();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(10, bis.transferTo(out));
+            assertEquals("0123456789", out.toString(StandardCharsets.UTF_8));
+            assertTrue(bis.skipBoundary());
+
+            out.reset();
+            assertEquals(4, bis.transferTo(Channels.newChannel(out)));
+            assertEquals("rest", out.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testStartsWith() throws IOException {
+        BoundaryInputStream bis = BoundaryInputStream.builder(inputStreamFromString("hello world")).bufferSize(8).build();
+
+        assertTrue(bis.startsWith("hello".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(bis.startsWith("HELLO".getBytes(StandardCharsets.UTF_8)));
+
+        bis.readNBytes(6);
+        assertTrue(bis.startsWith("world".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(bis.startsWith("world!".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IllegalArgumentException.class,
+                () -> bis.startsWith("hello world".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testInvalidBoundary() {
+        BoundaryInputStream bis = BoundaryInputStream.builder(inputStreamFromString("")).bufferSize(4).build();
+
+        assertThrows(IllegalArgumentException.class, () -> bis.setBoundary((byte[]) null));
+        assertThrows(IllegalArgumentException.class, () -> bis.setBoundary(new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> bis.setBoundary(new byte[5]));
+    }
+
+    @Test
+    void testLowLatency() throws IOException {
+        byte[] available = "hello--wor-".getBytes(StandardCharsets.UTF_8);
+        InputStream source = new InputStream() {
+            boolean served;
+
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                assertFalse(served, "must not wait for more data");
+                served = true;
+                int length = Math.min(len, available.length);
+                System.arraycopy(available, 0, b, off, length);
+                return length;
+            }
+        };
+
+        BoundaryInputStream bis = BoundaryInputStream
+                .builder(source)
+                .bufferSize(1024)
+                .boundary("--".getBytes(StandardCharsets.UTF_8))
+                .lowLatency(true)
+                .build();
+
+        byte[] b = new byte[100];
+        assertEquals(5, bis.read(b));
+        assertEquals(-1, bis.read(b));
+        assertTrue(bis.skipBoundary());
+        // Only the dash could be the start of a boundary
+        assertEquals(3, bis.read(b));
+        assertEquals("wor", new String(b, 0, 3, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testMatchesNaiveSearch() throws IOException {
+        for (boolean direct : new boolean[]{false, true}) {
+            testMatchesNaiveSearch(BoundarySearch.BOYER_MOORE, false, 1, direct);
+            testMatchesNaiveSearch(BoundarySearch.SWAR, false, 1, direct);
+            testMatchesNaiveSearch(BoundarySearch.SWAR, true, 1, direct);
+            testMatchesNaiveSearch(BoundarySearch.KMP, true, 1, direct);
+            testMatchesNaiveSearch(BoundarySearch.SWAR, false, 8, direct);
+            testMatchesNaiveSearch(BoundarySearch.SWAR, true, 8, direct);
+        }
+    }
+
+    private void testMatchesNaiveSearch(BoundarySearch.Factory searchFactory, boolean lowLatency, int growth,
+                                        boolean direct) throws IOException {
+        byte[] boundary = "\r\n--ab".getBytes(StandardCharsets.UTF_8);
+        String alphabet = "\r\n-ab";
+        java.util.Random random = new java.util.Random(1);
+
+        for (int round = 0; round < 2000; round++) {
+            byte[] data = new byte[random.nextInt(200)];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) alphabet.charAt(random.nextInt(alphabet.length()));
+            }
+
+            int expected = naiveIndexOf(data, boundary);
+            int bufferSize = boundary.length + random.nextInt(40);
+            InputStream source = new TricklingInputStream(data, 1 + random.nextInt(10));
+            BoundaryInputStream bis = (direct
+                    ? BoundaryInputStream.builder(Channels.newChannel(source))
+                    : BoundaryInputStream.builder(source))
+                    .bufferSize(bufferSize)
+                    .maxBufferSize(growth * bufferSize)
+                    .searchFactory(searchFactory)
+                    .boundary(boundary)
+                    .lowLatency(lowLatency)
+                    .build();
+
+            byte[] prefix = bis.readAllBytes();
+            assertEquals(expected == -1 ? data.length : expected, prefix.length);
+            assertEquals(expected != -1, bis.skipBoundary());
+        }
+    }
+
+    @Test
+    void testSearchIsLinear() throws IOException {
+        byte[] boundary = "\r\n--0123456789abcdef0123456789".getBytes(StandardCharsets.UTF_8);
+        byte[] nearMatch = "\r\n--0123456789abcdef012345678X".getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[100 * nearMatch.length + boundary.length];
+        for (int i = 0; i < 100; i++) {
+            System.arraycopy(nearMatch, 0, data, i * nearMatch.length, nearMatch.length);
+        }
+        System.arraycopy(boundary, 0, data, 100 * nearMatch.length, boundary.length);
+
+        for (boolean lowLatency : new boolean[]{false, true}) {
+            long[] searched = new long[1];
+            BoundaryInputStream bis = BoundaryInputStream
+                    .builder(new TricklingInputStream(data, 1))
+                    .bufferSize(64)
+                    .boundary(boundary)
+                    .lowLatency(lowLatency)
+                    .listener(new BoundaryInputStream.Listener() {
+                        @Override
+                        public void searched(int bytes, boolean found) {
+                            searched[0] += bytes;
+                        }
+                    })
+                    .build();
+
+            // Byte-wise reads from a byte-wise source used to search the held back tail
+            // again on every call
+            int length = 0;
+            while (bis.read() != -1) {
+                length++;
+            }
+
+            assertEquals(100 * nearMatch.length, length);
+            assertTrue(bis.skipBoundary());
+            assertTrue(searched[0] <= 2L * data.length, "searched " + searched[0] + " bytes");
+        }
+    }
+
+    @Test
+    void testElasticBuffer() throws IOException {
+        byte[] large = new byte[100000];
+        new java.util.Random(3).nextBytes(large);
+        for (int i = 0; i < large.length; i++) {
+            if (large[i] == '-') {
+                large[i] = 'x';
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes("small--".getBytes(StandardCharsets.UTF_8));
+        out.writeBytes(large);
+        out.writeBytes("--tail".getBytes(StandardCharsets.UTF_8));
+
+        for (boolean lowLatency : new boolean[]{false, true}) {
+            BoundaryInputStream bis = BoundaryInputStream
+                    .builder(new TricklingInputStream(out.toByteArray(), 1000))
+                    .bufferSize(16)
+                    .maxBufferSize(1024)
+                    .shrinkBuffer(true)
+                    .boundary("--".getBytes(StandardCharsets.UTF_8))
+                    .lowLatency(lowLatency)
+                    .build();
+
+            assertEquals("small", readString(bis));
+            assertEquals(16, bis.getBufferSize());
+            assertTrue(bis.skipBoundary());
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] chunk = new byte[7];
+            int maxBufferSize = 0;
+            for (int n; (n = bis.read(chunk)) != -1; ) {
+                body.write(chunk, 0, n);
+                maxBufferSize = Math.max(maxBufferSize, bis.getBufferSize());
+            }
+
+            assertArrayEquals(large, body.toByteArray());
+            assertEquals(1024, maxBufferSize);
+            assertTrue(bis.skipBoundary());
+            assertEquals(16, bis.getBufferSize());
+            assertEquals("tail", readString(bis));
+        }
+    }
+
+    /**
+     * Returns at most a few bytes per read, like a slow network connection.
+     */
+    private static class TricklingInputStream extends ByteArrayInputStream {
+        private final int maxReadLength;
+
+        private TricklingInputStream(byte[] data, int maxReadLength) {
+            super(data);
+            this.maxReadLength = maxReadLength;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, maxReadLength));
+        }
+    }
+
+    private static int naiveIndexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+
+        return -1;
+    }
+}
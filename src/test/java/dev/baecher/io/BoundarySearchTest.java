@@ -0,0 +1,98 @@
+package dev.baecher.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundarySearchTest {
+    private static final BoundarySearch.Factory[] FACTORIES = {BoundarySearch.BOYER_MOORE, BoundarySearch.SWAR, BoundarySearch.KMP};
+
+    @Test
+    void testBasic() {
+        byte[] data = "hello\r\n--world\r\n--".getBytes(StandardCharsets.UTF_8);
+
+        for (BoundarySearch.Factory factory : FACTORIES) {
+            BoundarySearch search = factory.create("\r\n--".getBytes(StandardCharsets.UTF_8));
+            assertEquals(5, search.indexOf(data, 0, data.length));
+            assertEquals(14, search.indexOf(data, 6, data.length));
+            assertEquals(-1, search.indexOf(data, 6, data.length - 1));
+            assertEquals(-1, search.indexOf(data, 15, data.length));
+            assertEquals(-1, search.indexOf(data, 0, 0));
+        }
+    }
+
+    @Test
+    void testMatchesNaiveSearch() {
+        Random random = new Random(7);
+        String alphabet = "\r\n-xy";
+
+        for (int round = 0; round < 5000; round++) {
+            byte[] pattern = new byte[1 + random.nextInt(20)];
+            byte[] data = new byte[random.nextInt(100)];
+            fill(random, alphabet, pattern);
+            fill(random, alphabet, data);
+            int from = data.length == 0 ? 0 : random.nextInt(data.length);
+            int to = from + random.nextInt(data.length - from + 1);
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(data.length).put(data);
+            int expected = naiveIndexOf(data, from, to, pattern);
+
+            for (BoundarySearch.Factory factory : FACTORIES) {
+                BoundarySearch search = factory.create(pattern);
+                assertEquals(expected, search.indexOf(data, from, to));
+                assertEquals(expected, search.indexOf(direct, from, to));
+                assertEquals(expected, search.indexOf(ByteBuffer.wrap(data).asReadOnlyBuffer(), from, to));
+            }
+
+            BoundarySearch copying = new BoundarySearch() {
+                @Override
+                public int indexOf(byte[] b, int from, int to) {
+                    return naiveIndexOf(b, from, to, pattern);
+                }
+            };
+            assertEquals(expected, copying.indexOf(direct, from, to));
+        }
+    }
+
+    @Test
+    void testAdversarialInput() {
+        // Periodic patterns and data full of near matches make the fast searches fall back
+        byte[] pattern = "abababababababababab-".getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[10001];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 2 == 0 ? 'a' : 'b');
+        }
+        data[data.length - 1] = '-';
+
+        for (BoundarySearch.Factory factory : FACTORIES) {
+            BoundarySearch search = factory.create(pattern);
+            assertEquals(data.length - pattern.length, search.indexOf(data, 0, data.length));
+            assertEquals(data.length - pattern.length, search.indexOf(ByteBuffer.wrap(data), 0, data.length));
+            assertEquals(-1, search.indexOf(data, 0, data.length - 1));
+        }
+    }
+
+    private static void fill(Random random, String alphabet, byte[] b) {
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+    }
+
+    private static int naiveIndexOf(byte[] data, int from, int to, byte[] pattern) {
+        outer:
+        for (int i = from; i + pattern.length <= to; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,72 @@
+package dev.baecher.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelBoundaryScanTest {
+    private static long[] naiveFindAll(byte[] data, byte[] pattern, int from, int to) {
+        long[] found = new long[0];
+
+        outer:
+        for (int i = from; i + pattern.length <= to; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            found = Arrays.copyOf(found, found.length + 1);
+            found[found.length - 1] = i;
+        }
+
+        return found;
+    }
+
+    @Test
+    void testMatchesNaiveSearch() throws IOException {
+        Random random = new Random(11);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Path file = Files.createTempFile("scan", ".bin");
+
+        try {
+            for (int round = 0; round < 300; round++) {
+                byte[] pattern = "\r\n--ab".getBytes(StandardCharsets.UTF_8);
+                byte[] data = new byte[random.nextInt(2000)];
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = (byte) "\r\n-ab".charAt(random.nextInt(5));
+                }
+                int from = data.length == 0 ? 0 : random.nextInt(data.length);
+                int to = from + random.nextInt(data.length - from + 1);
+                int chunkSize = 1 + random.nextInt(100);
+                Boundary boundary = new Boundary(pattern);
+
+                long[] expected = naiveFindAll(data, pattern, from, to);
+                assertArrayEquals(expected, ParallelBoundaryScan.findAll(data, boundary, from, to, pool, chunkSize));
+
+                Files.write(file, data);
+                try (FileChannel channel = FileChannel.open(file)) {
+                    assertArrayEquals(expected,
+                            ParallelBoundaryScan.findAll(channel, boundary, from, to, pool, chunkSize));
+                }
+            }
+        } finally {
+            pool.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testInvalidChunkSize() {
+        assertThrows(IllegalArgumentException.class, () -> ParallelBoundaryScan.findAll(
+                new byte[10], new Boundary(new byte[]{1}), 0, 10, ForkJoinPool.commonPool(), 0));
+    }
+}
@@ -0,0 +1,76 @@
+package dev.baecher.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StripedBufferPoolTest {
+    @Test
+    void testReuse() {
+        StripedBufferPool pool = StripedBufferPool.builder().stripes(1).maxBuffersPerStripe(2).build();
+
+        byte[] a = pool.acquire(16);
+        byte[] b = pool.acquire(32);
+        assertEquals(16, a.length);
+        assertEquals(32, b.length);
+
+        pool.release(a);
+        pool.release(b);
+        assertEquals(2, pool.getPooledCount());
+
+        assertSame(b, pool.acquire(32));
+        assertSame(a, pool.acquire(16));
+        assertNotSame(a, pool.acquire(16));
+
+        assertEquals(2, pool.getHits());
+        assertEquals(3, pool.getMisses());
+        assertEquals(0, pool.getPooledCount());
+    }
+
+    @Test
+    void testBounded() {
+        StripedBufferPool pool = StripedBufferPool.builder().stripes(1).maxBuffersPerStripe(2).build();
+
+        for (int i = 0; i < 5; i++) {
+            pool.release(new byte[8]);
+        }
+
+        assertEquals(2, pool.getPooledCount());
+        assertEquals(3, pool.getDrops());
+    }
+
+    @Test
+    void testConcurrentUse() throws Exception {
+        StripedBufferPool pool = StripedBufferPool.builder().stripes(4).maxBuffersPerStripe(8).build();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] futures = new Future<?>[8];
+            for (int t = 0; t < futures.length; t++) {
+                futures[t] = executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        byte[] buffer = pool.acquire(64);
+                        assertEquals(64, buffer.length);
+                        pool.release(buffer);
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(80000, pool.getHits() + pool.getMisses());
+        assertTrue(pool.getPooledCount() <= 32);
+    }
+
+    @Test
+    void testInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> StripedBufferPool.builder().stripes(0).build());
+    }
+}
@@ -0,0 +1,39 @@
+package dev.baecher.multipart;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentDispositionTest {
+    @Test
+    void testParse() {
+        ContentDisposition cd = ContentDisposition.parse(
+                "form-data; NAME=\"upload\"; filename=\"a;b.txt\"; filename*=UTF-8''%e2%82%ac.txt; x=y");
+
+        assertEquals("form-data", cd.getType());
+        assertEquals("upload", cd.getName());
+        assertEquals("€.txt", cd.getFilename());
+        assertEquals("a;b.txt", cd.getParameter("filename"));
+        assertEquals("y", cd.getParameter("x"));
+        assertEquals(Map.of("name", "upload", "filename", "a;b.txt", "filename*", "€.txt", "x", "y"),
+                cd.getParameters());
+    }
+
+    @Test
+    void testMalformed() {
+        assertThrows(IllegalArgumentException.class, () -> ContentDisposition.parse("form-data"));
+        assertThrows(IllegalArgumentException.class, () -> ContentDisposition.parse("form-data; name"));
+    }
+
+    @Test
+    void testCachedOnHeaders() {
+        Headers headers = Headers.fromBytes("Content-Disposition: form-data; name=a".getBytes());
+
+        assertSame(headers.getContentDisposition(), headers.getContentDisposition());
+        assertEquals("a", headers.getName());
+        assertNull(headers.getFilename());
+        assertNull(Headers.fromBytes(new byte[0]).getContentDisposition());
+    }
+}
@@ -0,0 +1,56 @@
+package dev.baecher.multipart;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentTypeTest {
+    @Test
+    void testParse() {
+        ContentType ct = ContentType.parse("Text/Plain; Charset=\"ISO-8859-1\"");
+
+        assertEquals("text", ct.getType());
+        assertEquals("plain", ct.getSubtype());
+        assertEquals("text/plain", ct.getMediaType());
+        assertFalse(ct.isMultipart());
+        assertEquals(StandardCharsets.ISO_8859_1, ct.getCharset());
+        assertNull(ct.getBoundary());
+    }
+
+    @Test
+    void testMultipart() {
+        ContentType ct = ContentType.parse("multipart/mixed; boundary=\"simple boundary\"");
+
+        assertTrue(ct.isMultipart());
+        assertEquals("simple boundary", ct.getBoundary());
+        assertNull(ct.getCharset());
+    }
+
+    @Test
+    void testUnknownCharset() {
+        assertNull(ContentType.parse("text/plain; charset=x-no-such-charset").getCharset());
+        assertNull(ContentType.parse("text/plain; charset=\"not a name\"").getCharset());
+    }
+
+    @Test
+    void testWithoutParameters() {
+        assertTrue(ContentType.parse("application/octet-stream").getParameters().isEmpty());
+    }
+
+    @Test
+    void testMalformed() {
+        assertThrows(IllegalArgumentException.class, () -> ContentType.parse("text"));
+        assertThrows(IllegalArgumentException.class, () -> ContentType.parse("text/"));
+        assertThrows(IllegalArgumentException.class, () -> ContentType.parse("text/plain; charset"));
+    }
+
+    @Test
+    void testCachedOnHeaders() {
+        Headers headers = Headers.fromBytes("content-type: text/plain".getBytes(StandardCharsets.UTF_8));
+
+        assertSame(headers.getContentType(), headers.getContentType());
+        assertNull(Headers.fromBytes(new byte[0]).getContentType());
+    }
+}
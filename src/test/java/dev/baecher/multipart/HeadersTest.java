@@ -35,6 +35,30 @@ public class HeadersTest {
         assertEquals("value:2", headers.getHeaderValue("key2"));
     }
 
+    @Test
+    void testWhitespaceAroundColon() {
+        Headers headers = Headers.fromBytes("key \t: \tvalue \r\nContent-Type :text/plain\r\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(2, headers.getAll().size());
+        assertEquals("value ", headers.getHeaderValue("key"));
+        assertEquals("text/plain", headers.getHeaderValue("CONTENT-TYPE"));
+    }
+
+    @Test
+    void testNonAsciiValues() {
+        Headers headers = Headers.fromBytes("Käse: Brötchen\r\nX: €".getBytes(StandardCharsets.UTF_8));
+        assertEquals("Brötchen", headers.getHeaderValue("KÄSE"));
+        assertEquals("€", headers.getHeaderValue("x"));
+    }
+
+    @Test
+    void testEmptyLines() {
+        assertEquals(1, Headers.fromBytes("key: value\r\n\r\n".getBytes(StandardCharsets.UTF_8)).getAll().size());
+        assertThrows(IllegalArgumentException.class,
+                () -> Headers.fromBytes("key: value\r\n\r\nkey2: value".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IllegalArgumentException.class,
+                () -> Headers.fromBytes("\r\nkey: value".getBytes(StandardCharsets.UTF_8)));
+    }
+
     @Test
     void testGetName() {
         Headers headers = Headers.fromBytes(
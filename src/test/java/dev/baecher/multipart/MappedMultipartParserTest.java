@@ -0,0 +1,181 @@
+package dev.baecher.multipart;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedMultipartParserTest {
+    private static String asString(ByteBuffer b) {
+        return StandardCharsets.UTF_8.decode(b).toString();
+    }
+
+    @Test
+    void testBasicInput() throws IOException {
+        Path file = Files.createTempFile("multipart", ".bin");
+        try {
+            Files.write(file, StreamingMultipartParserTest.THREE_PARTS);
+
+            List<MappedMultipartParser.Part> parts = new ArrayList<>();
+            try (MappedMultipartParser parser = MappedMultipartParser.builder(file).build()) {
+                parser.forEachRemaining(parts::add);
+
+                assertEquals(3, parts.size());
+                assertEquals("first", parts.get(0).getHeaders().getName());
+                assertEquals("photo.jpg", parts.get(1).getHeaders().getFilename());
+
+                // Parts can be used in any order
+                assertEquals("Third.", asString(parts.get(2).getBody()));
+                assertEquals("This is the first file.", asString(parts.get(0).getBody()));
+
+                MappedMultipartParser.Part second = parts.get(1);
+                assertEquals("This is the second file.", new String(StreamingMultipartParserTest.THREE_PARTS,
+                        (int) second.getOffset(), (int) second.getLength(), StandardCharsets.UTF_8));
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                assertEquals(24, second.transferTo(Channels.newChannel(out)));
+                assertEquals("This is the second file.", out.toString(StandardCharsets.UTF_8));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testSmallWindows() throws IOException {
+        Random random = new Random(3);
+        String boundary = "--xyz";
+        Path file = Files.createTempFile("multipart", ".bin");
+
+        try {
+            for (int round = 0; round < 100; round++) {
+                List<byte[]> bodies = new ArrayList<>();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+                for (int i = 0; i < 1 + random.nextInt(4); i++) {
+                    byte[] body = new byte[random.nextInt(300)];
+                    for (int j = 0; j < body.length; j++) {
+                        body[j] = (byte) "\r\n-xyz\u00ff".charAt(random.nextInt(7));
+                    }
+                    if (new String(body, StandardCharsets.ISO_8859_1).contains("\r\n" + boundary)) {
+                        continue;
+                    }
+                    bodies.add(body);
+                    out.write((boundary + "\r\nContent-Type: application/octet-stream\r\n\r\n")
+                            .getBytes(StandardCharsets.UTF_8));
+                    out.write(body);
+                    out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+                }
+                out.write((boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+                Files.write(file, out.toByteArray());
+
+                try (FileChannel channel = FileChannel.open(file);
+                     MappedMultipartParser parser = MappedMultipartParser.builder(channel)
+                             .windowSize(16 + random.nextInt(100))
+                             .parallelScan(random.nextBoolean() ? ForkJoinPool.commonPool() : null)
+                             .build()) {
+                    for (byte[] body : bodies) {
+                        assertTrue(parser.hasNext());
+                        ByteBuffer mapped = parser.next().getBody();
+                        byte[] actual = new byte[mapped.remaining()];
+                        mapped.get(actual);
+                        assertArrayEquals(body, actual);
+                    }
+                    assertFalse(parser.hasNext());
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testPrematureEndOfData() throws IOException {
+        Path file = Files.createTempFile("multipart", ".bin");
+        try {
+            Files.writeString(file, "--C7AHVyJbNc\r\nContent-Type: text/plain\r\n\r\nno end in sight");
+
+            try (MappedMultipartParser parser = MappedMultipartParser.builder(file).build()) {
+                assertThrows(IllegalArgumentException.class, parser::next);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testTransferToStalledChannel() throws IOException {
+        Path file = Files.createTempFile("multipart", ".bin");
+        try {
+            Files.write(file, StreamingMultipartParserTest.THREE_PARTS);
+
+            try (MappedMultipartParser parser = MappedMultipartParser.builder(file).build()) {
+                MappedMultipartParser.Part first = parser.next();
+                WritableByteChannel full = new WritableByteChannel() {
+                    @Override
+                    public int write(ByteBuffer src) {
+                        return 0;
+                    }
+
+                    @Override
+                    public boolean isOpen() {
+                        return true;
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                };
+
+                assertTimeoutPreemptively(Duration.ofSeconds(5),
+                        () -> assertThrows(IOException.class, () -> first.transferTo(full)));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testTruncatedAfterDelimiter() throws IOException {
+        String part = ""
+                + "--C7AHVyJbNc\r\n"
+                + "Content-Disposition: form-data; name=foo\r\n"
+                + "\r\n"
+                + "data\r\n"
+                + "--C7AHVyJbNc";
+        Path file = Files.createTempFile("multipart", ".bin");
+
+        try {
+            for (String tail : new String[]{"", "-", "\r", "xx"}) {
+                Files.write(file, (part + tail).getBytes(StandardCharsets.UTF_8));
+                try (MappedMultipartParser parser = MappedMultipartParser.builder(file).build()) {
+                    assertEquals("data", asString(parser.next().getBody()));
+                    assertThrows(IllegalArgumentException.class, parser::hasNext, tail);
+                }
+            }
+
+            // The line break after the close delimiter is optional
+            Files.write(file, (part + "--").getBytes(StandardCharsets.UTF_8));
+            try (MappedMultipartParser parser = MappedMultipartParser.builder(file).build()) {
+                parser.next();
+                assertFalse(parser.hasNext());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
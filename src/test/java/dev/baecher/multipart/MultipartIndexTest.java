@@ -0,0 +1,105 @@
+package dev.baecher.multipart;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultipartIndexTest {
+    private static final byte[] DATA = StreamingMultipartParserTest.THREE_PARTS;
+
+    private static void assertLayout(MultipartIndex index) {
+        assertEquals(3, index.size());
+
+        String text = new String(DATA, StandardCharsets.UTF_8);
+        MultipartIndex.Entry second = index.get(1);
+        assertEquals(text.indexOf("Content-Disposition: form-data; name=second"), second.getHeaderOffset());
+        assertEquals("Content-Disposition: form-data; name=second; filename=photo.jpg".length(),
+                second.getHeaderLength());
+        assertEquals(text.indexOf("This is the second file."), second.getBodyOffset());
+        assertEquals(24, second.getBodyLength());
+        assertEquals("photo.jpg", second.getHeaders().getFilename());
+
+        assertSame(index.get(2), index.get("third"));
+        assertNull(index.get("fourth"));
+    }
+
+    @Test
+    void testScanByteArray() throws IOException {
+        MultipartIndex index = MultipartIndex.scan(DATA);
+        assertLayout(index);
+
+        // Parts can be opened in any order and more than once
+        assertEquals("Third.", new String(index.get(2).openBody(DATA).readAllBytes(), StandardCharsets.UTF_8));
+        assertEquals("Third.", new String(index.get(2).openBody(DATA).readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testScanFile() throws IOException {
+        Path file = Files.createTempFile("multipart", ".bin");
+        try {
+            Files.write(file, DATA);
+            MultipartIndex index = MultipartIndex.scan(file);
+            assertLayout(index);
+
+            try (FileChannel channel = FileChannel.open(file)) {
+                assertLayout(MultipartIndex.scan(channel));
+
+                assertEquals("This is the first file.",
+                        new String(index.get("first").openBody(channel).readAllBytes(), StandardCharsets.UTF_8));
+                assertEquals("Third.",
+                        new String(index.get("third").openBody(channel).readAllBytes(), StandardCharsets.UTF_8));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testPersistence() throws IOException {
+        MultipartIndex index = MultipartIndex.scan(DATA);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.writeTo(out);
+        MultipartIndex loaded = MultipartIndex.readFrom(new ByteArrayInputStream(out.toByteArray()));
+
+        assertLayout(loaded);
+        for (int i = 0; i < index.size(); i++) {
+            assertEquals(index.get(i).getBodyOffset(), loaded.get(i).getBodyOffset());
+            assertEquals(index.get(i).getHeaders().getName(), loaded.get(i).getHeaders().getName());
+        }
+
+        assertThrows(IllegalArgumentException.class,
+                () -> MultipartIndex.readFrom(new ByteArrayInputStream(new byte[12])));
+    }
+
+    @Test
+    void testCorruptIndex() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MultipartIndex.scan(DATA).writeTo(out);
+        byte[] valid = out.toByteArray();
+
+        // Part count far beyond the data
+        byte[] count = valid.clone();
+        ByteBuffer.wrap(count).putInt(8, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> MultipartIndex.readFrom(new ByteArrayInputStream(count)));
+
+        // Header length far beyond the data, and negative
+        for (int headerLength : new int[]{Integer.MAX_VALUE, -1}) {
+            byte[] header = valid.clone();
+            ByteBuffer.wrap(header).putInt(12 + 24, headerLength);
+            assertThrows(IOException.class, () -> MultipartIndex.readFrom(new ByteArrayInputStream(header)));
+        }
+
+        assertThrows(IOException.class,
+                () -> MultipartIndex.readFrom(new ByteArrayInputStream(valid, 0, valid.length - 1)));
+    }
+}
@@ -0,0 +1,295 @@
+package dev.baecher.multipart;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultipartPublisherTest {
+    private static byte[] input(int bodySize) {
+        String body = "x".repeat(bodySize);
+        return (""
+                + "--C7AHVyJbNc\r\n"
+                + "Content-Disposition: form-data; name=first\r\n"
+                + "\r\n"
+                + body + "\r\n"
+                + "--C7AHVyJbNc\r\n"
+                + "Content-Disposition: form-data; name=second\r\n"
+                + "\r\n"
+                + "second body\r\n"
+                + "--C7AHVyJbNc--\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    private static class PartCollector implements Flow.Subscriber<MultipartPublisher.PublishedPart> {
+        private final List<String> names = new ArrayList<>();
+        private final List<String> bodies = new ArrayList<>();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(MultipartPublisher.PublishedPart part) {
+            names.add(part.getHeaders().getName());
+            StringBuilder sb = new StringBuilder();
+            part.getBody().subscribe(new Flow.Subscriber<>() {
+                private Flow.Subscription bodySubscription;
+
+                @Override
+                public void onSubscribe(Flow.Subscription s) {
+                    bodySubscription = s;
+                    s.request(1);
+                }
+
+                @Override
+                public void onNext(ByteBuffer item) {
+                    sb.append(StandardCharsets.UTF_8.decode(item));
+                    bodySubscription.request(1);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    done.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    bodies.add(sb.toString());
+                    subscription.request(1);
+                }
+            });
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+    }
+
+    @Test
+    void testPublishesAllParts() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            StreamingMultipartParser parser = new StreamingMultipartParser(new ByteArrayInputStream(input(5000)), 256);
+            PartCollector collector = new PartCollector();
+            MultipartPublisher.builder(parser).executor(executor).chunkSize(100).build().subscribe(collector);
+
+            collector.done.get(10, TimeUnit.SECONDS);
+            assertEquals(List.of("first", "second"), collector.names);
+            assertEquals(List.of("x".repeat(5000), "second body"), collector.bodies);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testDemandControlsReading() throws Exception {
+        CountingInputStream source = new CountingInputStream(new ByteArrayInputStream(input(100000)));
+        StreamingMultipartParser parser = StreamingMultipartParser.builder(source).bufferSize(1024).build();
+        List<ByteBuffer> chunks = new ArrayList<>();
+        List<Flow.Subscription> bodySubscriptions = new ArrayList<>();
+
+        MultipartPublisher.builder(parser).executor(Runnable::run).chunkSize(100).build().subscribe(
+                new Flow.Subscriber<>() {
+                    @Override
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        subscription.request(1);
+                    }
+
+                    @Override
+                    public void onNext(MultipartPublisher.PublishedPart item) {
+                        item.getBody().subscribe(new Flow.Subscriber<>() {
+                            @Override
+                            public void onSubscribe(Flow.Subscription subscription) {
+                                bodySubscriptions.add(subscription);
+                            }
+
+                            @Override
+                            public void onNext(ByteBuffer item) {
+                                chunks.add(item);
+                            }
+
+                            @Override
+                            public void onError(Throwable throwable) {
+                                fail(throwable.toString());
+                            }
+
+                            @Override
+                            public void onComplete() {
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        fail(throwable.toString());
+                    }
+
+                    @Override
+                    public void onComplete() {
+                    }
+                });
+
+        assertEquals(1, bodySubscriptions.size());
+        long readBeforeDemand = source.count;
+        assertTrue(readBeforeDemand <= 2048);
+
+        bodySubscriptions.get(0).request(3);
+        assertEquals(3, chunks.size());
+        assertTrue(source.count <= readBeforeDemand + 1024);
+
+        bodySubscriptions.get(0).cancel();
+        assertEquals(3, chunks.size());
+    }
+
+    @Test
+    void testSingleSubscriber() throws IOException {
+        StreamingMultipartParser parser = new StreamingMultipartParser(new ByteArrayInputStream(input(10)));
+        MultipartPublisher publisher = MultipartPublisher.builder(parser).executor(Runnable::run).build();
+        publisher.subscribe(new PartCollector());
+
+        PartCollector second = new PartCollector();
+        publisher.subscribe(second);
+        assertTrue(second.done.isCompletedExceptionally());
+    }
+
+    @Test
+    void testExecutorRequired() throws IOException {
+        StreamingMultipartParser parser = new StreamingMultipartParser(new ByteArrayInputStream(input(10)));
+        assertThrows(IllegalArgumentException.class, () -> MultipartPublisher.builder(parser).build());
+    }
+
+    private static class BodyProbe implements Flow.Subscriber<ByteBuffer> {
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private Throwable error;
+        private boolean completed;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            chunks.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    private static class PartProbe implements Flow.Subscriber<MultipartPublisher.PublishedPart> {
+        private final List<MultipartPublisher.PublishedPart> parts = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private boolean terminated;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(MultipartPublisher.PublishedPart item) {
+            parts.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            terminated = true;
+        }
+
+        @Override
+        public void onComplete() {
+            terminated = true;
+        }
+    }
+
+    @Test
+    void testCancelInMiddleOfBody() throws IOException {
+        StreamingMultipartParser parser = StreamingMultipartParser.builder(new ByteArrayInputStream(input(10000)))
+                .bufferSize(1024)
+                .build();
+        PartProbe parts = new PartProbe();
+        MultipartPublisher.builder(parser).executor(Runnable::run).chunkSize(100).build().subscribe(parts);
+
+        BodyProbe body = new BodyProbe();
+        parts.parts.get(0).getBody().subscribe(body);
+        body.subscription.request(2);
+        assertEquals(2, body.chunks.size());
+
+        parts.subscription.cancel();
+        assertTrue(body.error instanceof CancellationException);
+        assertFalse(body.completed);
+        assertFalse(parts.terminated);
+        assertFalse(parser.hasNext());
+
+        body.subscription.request(1);
+        parts.subscription.request(1);
+        assertEquals(2, body.chunks.size());
+        assertEquals(1, parts.parts.size());
+    }
+
+    @Test
+    void testCancelBeforeBodySubscribed() throws IOException {
+        StreamingMultipartParser parser = new StreamingMultipartParser(new ByteArrayInputStream(input(10000)));
+        PartProbe parts = new PartProbe();
+        MultipartPublisher.builder(parser).executor(Runnable::run).build().subscribe(parts);
+
+        parts.subscription.cancel();
+        assertFalse(parser.hasNext());
+
+        BodyProbe body = new BodyProbe();
+        parts.parts.get(0).getBody().subscribe(body);
+        assertTrue(body.error instanceof CancellationException);
+        assertTrue(body.chunks.isEmpty());
+    }
+}
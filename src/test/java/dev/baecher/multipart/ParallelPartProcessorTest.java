@@ -0,0 +1,196 @@
+package dev.baecher.multipart;
+
+import dev.baecher.io.BufferPool;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelPartProcessorTest {
+    private static byte[] input(int parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (int i = 0; i < parts; i++) {
+            out.writeBytes(("--C7AHVyJbNc\r\n"
+                    + "Content-Disposition: form-data; name=part" + i + "\r\n"
+                    + "\r\n"
+                    + String.valueOf(i).repeat(i * 100) + "\r\n").getBytes(StandardCharsets.UTF_8));
+        }
+        out.writeBytes("--C7AHVyJbNc--\r\n".getBytes(StandardCharsets.UTF_8));
+
+        return out.toByteArray();
+    }
+
+    @Test
+    void testProcessesAllParts() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            StreamingMultipartParser parser = new StreamingMultipartParser(new ByteArrayInputStream(input(30)), 256);
+            Map<String, String> bodies = new ConcurrentHashMap<>();
+
+            ParallelPartProcessor.builder(parser, executor)
+                    .chunkSize(64)
+                    .chunkCount(3)
+                    .maxPartsInFlight(2)
+                    .build()
+                    .process((headers, body) ->
+                            bodies.put(headers.getName(), new String(body.readAllBytes(), StandardCharsets.UTF_8)));
+
+            assertEquals(30, bodies.size());
+            for (int i = 0; i < 30; i++) {
+                assertEquals(String.valueOf(i).repeat(i * 100), bodies.get("part" + i));
+            }
+            assertFalse(parser.hasNext());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testUnreadBodiesAreDiscarded() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            StreamingMultipartParser parser = new StreamingMultipartParser(new ByteArrayInputStream(input(20)), 256);
+            Map<String, Integer> firstBytes = new ConcurrentHashMap<>();
+
+            ParallelPartProcessor.builder(parser, executor)
+                    .chunkSize(16)
+                    .chunkCount(2)
+                    .build()
+                    .process((headers, body) -> firstBytes.put(headers.getName(), body.read()));
+
+            assertEquals(20, firstBytes.size());
+            assertEquals(Integer.valueOf(-1), firstBytes.get("part0"));
+            assertEquals(Integer.valueOf('7'), firstBytes.get("part7"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testConsumerFailure() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertThrows(IllegalStateException.class, () -> {
+                StreamingMultipartParser parser =
+                        new StreamingMultipartParser(new ByteArrayInputStream(input(50)), 256);
+
+                ParallelPartProcessor.builder(parser, executor).chunkSize(32).chunkCount(2).build()
+                        .process((headers, body) -> {
+                            if (headers.getName().equals("part3")) {
+                                throw new IllegalStateException("boom");
+                            }
+                            body.readAllBytes();
+                        });
+            });
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testMalformedInput() {
+        byte[] truncated = "--C7AHVyJbNc\r\n\r\n\r\nno end in sight".getBytes(StandardCharsets.UTF_8);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertThrows(IllegalArgumentException.class, () ->
+                    ParallelPartProcessor.builder(new StreamingMultipartParser(new ByteArrayInputStream(truncated)), executor)
+                            .build()
+                            .process((headers, body) -> assertThrows(IOException.class, body::readAllBytes)));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Counts buffers that are taken and not handed back.
+     */
+    private static class CountingBufferPool implements BufferPool {
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        @Override
+        public byte[] acquire(int size) {
+            outstanding.incrementAndGet();
+            return new byte[size];
+        }
+
+        @Override
+        public void release(byte[] buffer) {
+            outstanding.decrementAndGet();
+        }
+    }
+
+    @Test
+    void testRejectingExecutor() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        AtomicInteger accepted = new AtomicInteger();
+        Executor rejecting = task -> {
+            if (accepted.incrementAndGet() > 2) {
+                throw new RejectedExecutionException("full");
+            }
+            executor.execute(task);
+        };
+        CountingBufferPool pool = new CountingBufferPool();
+
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(RejectedExecutionException.class, () ->
+                    ParallelPartProcessor.builder(new StreamingMultipartParser(new ByteArrayInputStream(input(10)), 256), rejecting)
+                            .chunkSize(32)
+                            .chunkCount(2)
+                            .maxPartsInFlight(3)
+                            .bufferPool(pool)
+                            .build()
+                            .process((headers, body) -> body.readAllBytes())));
+            assertEquals(0, pool.outstanding.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testChunksReturnedOnReadFailure() {
+        byte[] head = ("--C7AHVyJbNc\r\n"
+                + "Content-Disposition: form-data; name=big\r\n"
+                + "\r\n"
+                + "x".repeat(2000)).getBytes(StandardCharsets.UTF_8);
+        InputStream failing = new InputStream() {
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                if (position == head.length) {
+                    throw new IOException("connection reset");
+                }
+                return head[position++] & 0xff;
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountingBufferPool pool = new CountingBufferPool();
+
+        try {
+            assertThrows(IOException.class, () ->
+                    ParallelPartProcessor.builder(new StreamingMultipartParser(failing, 256), executor)
+                            .chunkSize(64)
+                            .chunkCount(4)
+                            .bufferPool(pool)
+                            .build()
+                            .process((headers, body) -> body.readAllBytes()));
+            assertEquals(0, pool.outstanding.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
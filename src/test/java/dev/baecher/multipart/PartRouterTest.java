@@ -0,0 +1,33 @@
+package dev.baecher.multipart;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PartRouterTest {
+    @Test
+    void testRouting() throws IOException {
+        List<String> seen = new ArrayList<>();
+
+        PartRouter router = PartRouter.builder()
+                .onFilename(Pattern.compile(".*\\.jpg"), part -> seen.add("image:" + part.getHeaders().getName()))
+                .onName("third", part -> seen.add(
+                        "third:" + new String(part.getInputStream().readAllBytes(), StandardCharsets.UTF_8)))
+                .onName("second", part -> seen.add("unreachable"))
+                .build();
+
+        StreamingMultipartParser parser = new StreamingMultipartParser(
+                new ByteArrayInputStream(StreamingMultipartParserTest.THREE_PARTS), 64);
+
+        assertEquals(2, router.route(parser));
+        assertEquals(List.of("image:second", "third:Third."), seen);
+        assertFalse(parser.hasNext());
+    }
+}
@@ -0,0 +1,165 @@
+package dev.baecher.multipart;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PushMultipartParserTest {
+    private static final byte[] INPUT = (""
+            + "--C7AHVyJbNc\r\n"
+            + "Content-Disposition: form-data; name=foo; filename=first.txt\r\n"
+            + "Content-Type: text/plain\r\n"
+            + "\r\n"
+            + "This is the first file.\r\n"
+            + "--C7AHVyJbNc\r\n"
+            + "\r\n"
+            + "\r\n"
+            + "Second\r\n--C7AHVyJbN\r\n"
+            + "--C7AHVyJbNc--\r\n"
+            + "epilogue").getBytes(StandardCharsets.UTF_8);
+
+    private static class RecordingListener implements PushMultipartParser.Listener {
+        private final List<String> events = new ArrayList<>();
+        private StringBuilder body;
+
+        @Override
+        public void partStarted(Headers headers) {
+            events.add("start:" + headers.getName());
+            body = new StringBuilder();
+        }
+
+        @Override
+        public void partData(ByteBuffer data) {
+            assertTrue(data.isReadOnly());
+            assertTrue(data.hasRemaining());
+            body.append(StandardCharsets.UTF_8.decode(data));
+        }
+
+        @Override
+        public void partEnded() {
+            events.add("body:" + body);
+            events.add("end");
+        }
+
+        @Override
+        public void streamEnded() {
+            events.add("done");
+        }
+    }
+
+    @Test
+    void testVariousChunkSizes() {
+        List<String> expected = List.of(
+                "start:foo", "body:This is the first file.", "end",
+                "start:null", "body:Second\r\n--C7AHVyJbN", "end",
+                "done");
+
+        for (int bufferSize = 90; bufferSize < 130; bufferSize++) {
+            for (int chunkSize = 1; chunkSize <= INPUT.length; chunkSize++) {
+                RecordingListener listener = new RecordingListener();
+                PushMultipartParser parser = PushMultipartParser.builder(listener).bufferSize(bufferSize).build();
+
+                for (int i = 0; i < INPUT.length; i += chunkSize) {
+                    parser.feed(ByteBuffer.wrap(INPUT, i, Math.min(chunkSize, INPUT.length - i)));
+                }
+                assertTrue(parser.isFinished());
+                parser.finish();
+
+                assertEquals(expected, listener.events);
+            }
+        }
+    }
+
+    @Test
+    void testDirectChunks() {
+        RecordingListener listener = new RecordingListener();
+        PushMultipartParser parser = PushMultipartParser.builder(listener).build();
+
+        ByteBuffer chunk = ByteBuffer.allocateDirect(INPUT.length);
+        chunk.put(INPUT).flip();
+        parser.feed(chunk);
+        parser.finish();
+
+        assertFalse(chunk.hasRemaining());
+        assertEquals("done", listener.events.get(listener.events.size() - 1));
+    }
+
+    @Test
+    void testPrematureEndOfData() {
+        PushMultipartParser parser = PushMultipartParser.builder(new RecordingListener()).build();
+        parser.feed(ByteBuffer.wrap(("--C7AHVyJbNc\r\n\r\n\r\nThis is some data.\r\n").getBytes(StandardCharsets.UTF_8)));
+
+        assertFalse(parser.isFinished());
+        assertThrows(IllegalArgumentException.class, parser::finish);
+    }
+
+    @Test
+    void testTruncatedAfterDelimiter() {
+        String part = ""
+                + "--C7AHVyJbNc\r\n"
+                + "Content-Disposition: form-data; name=foo\r\n"
+                + "\r\n"
+                + "data\r\n"
+                + "--C7AHVyJbNc";
+
+        for (String tail : new String[]{"", "-", "\r", "xx"}) {
+            PushMultipartParser parser = PushMultipartParser.builder(new RecordingListener()).build();
+            assertThrows(IllegalArgumentException.class, () -> {
+                parser.feed(ByteBuffer.wrap((part + tail).getBytes(StandardCharsets.UTF_8)));
+                parser.finish();
+            }, tail);
+        }
+
+        // The line break after the close delimiter is optional
+        RecordingListener listener = new RecordingListener();
+        PushMultipartParser parser = PushMultipartParser.builder(listener).build();
+        parser.feed(ByteBuffer.wrap((part + "--").getBytes(StandardCharsets.UTF_8)));
+        parser.finish();
+        assertEquals(List.of("start:foo", "body:data", "end", "done"), listener.events);
+    }
+
+    @Test
+    void testLargeHeaderInTinyChunks() {
+        // Searching the whole pending header block on every chunk would take quadratic time
+        byte[] input = ("--C7AHVyJbNc\r\n"
+                + "X-Padding: " + "x".repeat(250_000) + "\r\n"
+                + "Content-Disposition: form-data; name=foo\r\n"
+                + "\r\n"
+                + "body\r\n"
+                + "--C7AHVyJbNc--\r\n").getBytes(StandardCharsets.UTF_8);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+            RecordingListener listener = new RecordingListener();
+            PushMultipartParser parser = PushMultipartParser.builder(listener).bufferSize(1 << 18).build();
+
+            for (int i = 0; i < input.length; i++) {
+                parser.feed(ByteBuffer.wrap(input, i, 1));
+            }
+            parser.finish();
+
+            assertEquals(List.of("start:foo", "body:body", "end", "done"), listener.events);
+        });
+    }
+
+    @Test
+    void testHeaderTooLarge() {
+        PushMultipartParser parser = PushMultipartParser.builder(new RecordingListener()).bufferSize(32).build();
+
+        assertThrows(IllegalArgumentException.class, () -> parser.feed(ByteBuffer.wrap(
+                "--b\r\nContent-Disposition: form-data; name=foo\r\n\r\n".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    void testNoBoundary() {
+        PushMultipartParser parser = PushMultipartParser.builder(new RecordingListener()).build();
+        parser.feed(ByteBuffer.wrap("garbage".getBytes(StandardCharsets.UTF_8)));
+
+        assertThrows(IllegalArgumentException.class, parser::finish);
+    }
+}
@@ -1,15 +1,48 @@
 package dev.baecher.multipart;
 
+import dev.baecher.io.BufferPool;
+import dev.baecher.io.StripedBufferPool;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32C;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class StreamingMultipartParserTest {
+    static final byte[] THREE_PARTS = (""
+            + "--C7AHVyJbNc\r\n"
+            + "Content-Disposition: form-data; name=first\r\n"
+            + "\r\n"
+            + "This is the first file.\r\n"
+            + "--C7AHVyJbNc\r\n"
+            + "Content-Disposition: form-data; name=second; filename=photo.jpg\r\n"
+            + "\r\n"
+            + "This is the second file.\r\n"
+            + "--C7AHVyJbNc\r\n"
+            + "Content-Disposition: form-data; name=third\r\n"
+            + "\r\n"
+            + "Third.\r\n"
+            + "--C7AHVyJbNc--\r\n").getBytes(StandardCharsets.UTF_8);
+
     @Test
     void testBasicInput() throws IOException {
         InputStream is = new ByteArrayInputStream((""
@@ -44,6 +77,77 @@ public class StreamingMultipartParserTest {
         assertFalse(parser.hasNext());
     }
 
+    @Test
+    void testChannelSourceAndBufferViews() throws IOException {
+        byte[] input = (""
+                + "--C7AHVyJbNc\r\n"
+                + "Content-Disposition: form-data; name=foo\r\n"
+                + "\r\n"
+                + "This is the first file.\r\n"
+                + "--C7AHVyJbNc\r\n"
+                + "Content-Disposition: form-data; name=bar\r\n"
+                + "\r\n"
+                + "This is the second file.\r\n"
+                + "--C7AHVyJbNc--\r\n").getBytes(StandardCharsets.UTF_8);
+
+        StreamingMultipartParser parser = StreamingMultipartParser
+                .builder(Channels.newChannel(new ByteArrayInputStream(input)))
+                .bufferSize(64)
+                .build();
+
+        StreamingMultipartParser.Part first = parser.next();
+        StringBuilder sb = new StringBuilder();
+        for (ByteBuffer chunk; (chunk = first.readBuffer(5)) != null; ) {
+            assertTrue(chunk.isDirect());
+            sb.append(StandardCharsets.UTF_8.decode(chunk));
+        }
+        assertEquals("This is the first file.", sb.toString());
+        assertThrows(IllegalStateException.class, () -> first.readBuffer(5));
+
+        StreamingMultipartParser.Part second = parser.next();
+        assertEquals("bar", second.getHeaders().getName());
+        ByteBuffer dst = ByteBuffer.allocateDirect(64);
+        while (second.read(dst) != -1) {
+            // keep reading
+        }
+        dst.flip();
+        assertEquals("This is the second file.", StandardCharsets.UTF_8.decode(dst).toString());
+
+        assertFalse(parser.hasNext());
+    }
+
+    @Test
+    void testTransferTo() throws IOException {
+        byte[] input = (""
+                + "--C7AHVyJbNc\r\n"
+                + "\r\n"
+                + "\r\n"
+                + "This is the first file.\r\n"
+                + "--C7AHVyJbNc\r\n"
+                + "\r\n"
+                + "\r\n"
+                + "This is the second file.\r\n"
+                + "--C7AHVyJbNc--\r\n").getBytes(StandardCharsets.UTF_8);
+
+        StreamingMultipartParser parser = new StreamingMultipartParser(new ByteArrayInputStream(input), 40);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream first = parser.next().getInputStream();
+        assertEquals(23, first.transferTo(out));
+        assertEquals("This is the first file.", out.toString(StandardCharsets.UTF_8));
+        assertThrows(IllegalStateException.class, () -> first.transferTo(out));
+
+        Path file = Files.createTempFile("part", ".bin");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            assertEquals(24, parser.next().transferTo(channel));
+        } finally {
+            assertEquals("This is the second file.", Files.readString(file));
+            Files.delete(file);
+        }
+
+        assertFalse(parser.hasNext());
+    }
+
     @Test
     void testVariousBufferSizes() throws IOException {
         String fullData = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
@@ -71,6 +175,47 @@ public class StreamingMultipartParserTest {
         }
     }
 
+    @Test
+    void testRandomBodies() throws IOException {
+        Random random = new Random(42);
+        String boundary = "--xyz";
+
+        for (int round = 0; round < 200; round++) {
+            List<byte[]> bodies = new ArrayList<>();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int parts = 1 + random.nextInt(4);
+
+            for (int i = 0; i < parts; i++) {
+                byte[] body = new byte[random.nextInt(300)];
+                for (int j = 0; j < body.length; j++) {
+                    // Mostly bytes that also occur in the boundary marker to provoke near matches
+                    body[j] = (byte) "\r\n-xyz\u00ff".charAt(random.nextInt(7));
+                }
+                if (new String(body, StandardCharsets.ISO_8859_1).contains("\r\n" + boundary)) {
+                    continue;
+                }
+                bodies.add(body);
+                out.write((boundary + "\r\nContent-Type: application/octet-stream\r\n\r\n")
+                        .getBytes(StandardCharsets.UTF_8));
+                out.write(body);
+                out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+            }
+            out.write((boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+            int bufferSize = 100 + random.nextInt(200);
+            StreamingMultipartParser parser = StreamingMultipartParser
+                    .builder(new ByteArrayInputStream(out.toByteArray()))
+                    .bufferSize(bufferSize)
+                    .lowLatency(random.nextBoolean())
+                    .build();
+            for (byte[] body : bodies) {
+                assertTrue(parser.hasNext());
+                assertArrayEquals(body, parser.next().getInputStream().readAllBytes());
+            }
+            assertFalse(parser.hasNext());
+        }
+    }
+
     @Test
     void testPrematureEndOfData() throws IOException {
         InputStream is = new ByteArrayInputStream((""
@@ -84,6 +229,29 @@ public class StreamingMultipartParserTest {
                 () -> new StreamingMultipartParser(is).next().getInputStream().readAllBytes());
     }
 
+    @Test
+    void testTruncatedAfterDelimiter() throws IOException {
+        String part = ""
+                + "--C7AHVyJbNc\r\n"
+                + "Content-Disposition: form-data; name=foo\r\n"
+                + "\r\n"
+                + "data\r\n"
+                + "--C7AHVyJbNc";
+
+        for (String tail : new String[]{"", "-", "\r", "xx"}) {
+            StreamingMultipartParser parser = new StreamingMultipartParser(
+                    new ByteArrayInputStream((part + tail).getBytes(StandardCharsets.UTF_8)));
+            assertEquals("data", new String(parser.next().getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+            assertThrows(IllegalArgumentException.class, parser::hasNext, tail);
+        }
+
+        // The line break after the close delimiter is optional
+        StreamingMultipartParser parser = new StreamingMultipartParser(
+                new ByteArrayInputStream((part + "--").getBytes(StandardCharsets.UTF_8)));
+        parser.next().skip();
+        assertFalse(parser.hasNext());
+    }
+
     @Test
     void testStreamsFullyRead() throws IOException {
         InputStream is = new ByteArrayInputStream((""
@@ -105,6 +273,36 @@ public class StreamingMultipartParserTest {
         assertThrows(IllegalStateException.class, parser::next);
     }
 
+    @Test
+    void testSkip() throws IOException {
+        StreamingMultipartParser parser = new StreamingMultipartParser(new ByteArrayInputStream(THREE_PARTS), 64);
+
+        StreamingMultipartParser.Part first = parser.next();
+        assertEquals('T', first.getInputStream().read());
+        assertEquals(22, first.skip());
+        assertThrows(IllegalStateException.class, first::skip);
+
+        assertEquals("second", parser.next().getHeaders().getName());
+        parser.skipRemaining();
+        assertFalse(parser.hasNext());
+    }
+
+    @Test
+    void testAutoDrain() throws IOException {
+        StreamingMultipartParser parser = StreamingMultipartParser
+                .builder(new ByteArrayInputStream(THREE_PARTS))
+                .bufferSize(64)
+                .autoDrain(true)
+                .build();
+
+        assertEquals("first", parser.next().getHeaders().getName());
+        assertEquals("second", parser.next().getHeaders().getName());
+        StreamingMultipartParser.Part third = parser.next();
+        assertEquals("third", third.getHeaders().getName());
+        assertEquals("Third.", new String(third.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+        assertFalse(parser.hasNext());
+    }
+
     @Test
     void testStreamsReadableOnce() throws IOException {
         InputStream is = new ByteArrayInputStream((""
@@ -122,4 +320,554 @@ public class StreamingMultipartParserTest {
 
         assertThrows(IllegalStateException.class, partStream::readAllBytes);
     }
+
+    @Test
+    void testBufferPool() throws IOException {
+        StripedBufferPool pool = StripedBufferPool.builder().stripes(1).build();
+
+        for (int round = 0; round < 3; round++) {
+            StreamingMultipartParser parser = StreamingMultipartParser
+                    .builder(new ByteArrayInputStream(THREE_PARTS))
+                    .bufferSize(64)
+                    .bufferPool(pool)
+                    .autoDrain(true)
+                    .build();
+
+            assertEquals(0, pool.getPooledCount());
+            while (parser.hasNext()) {
+                parser.next();
+            }
+            assertEquals(1, pool.getPooledCount());
+        }
+
+        assertEquals(1, pool.getMisses());
+        assertEquals(2, pool.getHits());
+
+        StreamingMultipartParser parser = StreamingMultipartParser
+                .builder(new ByteArrayInputStream(THREE_PARTS))
+                .bufferSize(64)
+                .bufferPool(pool)
+                .build();
+        InputStream first = parser.next().getInputStream();
+        parser.close();
+
+        assertEquals(1, pool.getPooledCount());
+        assertThrows(IOException.class, first::read);
+        assertFalse(parser.hasNext());
+
+        // Closing again does not release the buffer twice
+        parser.close();
+        assertEquals(1, pool.getPooledCount());
+    }
+
+    @Test
+    void testLowLatency() throws IOException {
+        // Everything up to the end of the first body, as if the rest was still in transit
+        int available = new String(THREE_PARTS, StandardCharsets.UTF_8)
+                .indexOf("\r\n--C7AHVyJbNc\r\nContent-Disposition: form-data; name=second");
+        InputStream source = new InputStream() {
+            int position;
+
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                assertTrue(position < available, "must not wait for more data");
+                int length = Math.min(len, available - position);
+                System.arraycopy(THREE_PARTS, position, b, off, length);
+                position += length;
+                return length;
+            }
+        };
+
+        StreamingMultipartParser parser = StreamingMultipartParser
+                .builder(source)
+                .lowLatency(true)
+                .build();
+
+        StreamingMultipartParser.Part part = parser.next();
+        assertEquals("first", part.getHeaders().getName());
+        // The last bytes could still turn out to be the start of the boundary
+        assertEquals("This is th", new String(part.getInputStream().readNBytes(10), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testMetrics() throws IOException {
+        ParserMetrics metrics = new ParserMetrics();
+        StreamingMultipartParser parser = StreamingMultipartParser
+                .builder(new ByteArrayInputStream(THREE_PARTS))
+                .bufferSize(64)
+                .listener(metrics)
+                .build();
+
+        while (parser.hasNext()) {
+            parser.next().getInputStream().readAllBytes();
+        }
+
+        assertEquals(THREE_PARTS.length, metrics.getBytesRead());
+        assertTrue(metrics.getRefills() > 1);
+        assertTrue(metrics.getSourceReads() > metrics.getRefills());
+        assertTrue(metrics.getSearches() > 0);
+        assertEquals(3, metrics.getHeaderBlocks());
+        assertEquals(3, metrics.getParts());
+        assertEquals(23 + 24 + 6, metrics.getBodyBytes());
+        assertTrue(metrics.getPartNanos() > 0);
+    }
+
+    @Test
+    void testDigests() throws Exception {
+        for (boolean direct : new boolean[]{false, true}) {
+            ByteArrayInputStream source = new ByteArrayInputStream(THREE_PARTS);
+            StreamingMultipartParser parser = (direct
+                    ? StreamingMultipartParser.builder(Channels.newChannel(source))
+                    : StreamingMultipartParser.builder(source))
+                    .bufferSize(64)
+                    .digest("SHA-256")
+                    .checksum(CRC32C::new)
+                    .build();
+
+            List<String> bodies = List.of("This is the first file.", "This is the second file.", "Third.");
+            for (String body : bodies) {
+                StreamingMultipartParser.Part part = parser.next();
+                assertThrows(IllegalStateException.class, part::getDigest);
+
+                if (body.startsWith("Third")) {
+                    part.skip();
+                } else {
+                    part.getInputStream().readAllBytes();
+                }
+
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                CRC32C crc = new CRC32C();
+                crc.update(bytes);
+                assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(bytes), part.getDigest());
+                assertEquals(crc.getValue(), part.getChecksum());
+            }
+        }
+
+        StreamingMultipartParser plain = new StreamingMultipartParser(new ByteArrayInputStream(THREE_PARTS));
+        StreamingMultipartParser.Part part = plain.next();
+        part.skip();
+        assertThrows(IllegalStateException.class, part::getDigest);
+
+        assertThrows(IllegalArgumentException.class, () -> StreamingMultipartParser
+                .builder(new ByteArrayInputStream(THREE_PARTS))
+                .digest("NO-SUCH-DIGEST")
+                .build());
+    }
+
+    private static StreamingMultipartParser.Builder limited() {
+        return StreamingMultipartParser.builder(new ByteArrayInputStream(THREE_PARTS)).bufferSize(64);
+    }
+
+    private static void assertLimit(LimitExceededException.Limit limit, Executable executable) {
+        assertEquals(limit, assertThrows(LimitExceededException.class, executable).getLimit());
+    }
+
+    @Test
+    void testLimits() throws IOException {
+        StreamingMultipartParser parser = limited().maxPartCount(2).autoDrain(true).build();
+        parser.next();
+        parser.next();
+        assertLimit(LimitExceededException.Limit.PART_COUNT, parser::next);
+
+        // The first header block is exactly 42 bytes long
+        limited().maxHeaderLength(42).build().next();
+        assertLimit(LimitExceededException.Limit.HEADER_LENGTH, () -> limited().maxHeaderLength(41).build().next());
+
+        assertLimit(LimitExceededException.Limit.HEADER_COUNT, () -> limited().maxHeaderCount(0).build().next());
+
+        InputStream body = limited().maxPartLength(10).build().next().getInputStream();
+        assertEquals(10, body.readNBytes(new byte[10], 0, 10));
+        assertLimit(LimitExceededException.Limit.PART_LENGTH, body::read);
+
+        StreamingMultipartParser.Part part = limited().maxPartLength(10).build().next();
+        assertLimit(LimitExceededException.Limit.PART_LENGTH, part::skip);
+
+        StreamingMultipartParser total = limited().maxTotalLength(100).autoDrain(true).build();
+        total.next();
+        assertLimit(LimitExceededException.Limit.TOTAL_LENGTH, total::next);
+
+        // Skipped parts count too
+        StreamingMultipartParser skipped = limited().maxPartCount(2).build();
+        skipped.next();
+        assertLimit(LimitExceededException.Limit.PART_COUNT, skipped::skipRemaining);
+
+        StreamingMultipartParser skippedTotal = limited().maxTotalLength(100).build();
+        skippedTotal.next();
+        assertLimit(LimitExceededException.Limit.TOTAL_LENGTH, skippedTotal::skipRemaining);
+
+        // Within all limits
+        parser = limited()
+                .maxPartCount(3)
+                .maxHeaderLength(64)
+                .maxHeaderCount(1)
+                .maxPartLength(24)
+                .maxTotalLength(THREE_PARTS.length)
+                .build();
+        while (parser.hasNext()) {
+            parser.next().skip();
+        }
+    }
+
+    private static byte[] encodedParts(byte[] body) {
+        String boundary = "--C7AHVyJbNc";
+        String qp = "caf=C3=A9 au lait=\r\n with a soft break =   \r\nand=3d=3D an escape=";
+
+        return (""
+                + boundary + "\r\n"
+                + "Content-Transfer-Encoding: BASE64\r\n"
+                + "\r\n"
+                + Base64.getMimeEncoder().encodeToString(body) + "\r\n"
+                + boundary + "\r\n"
+                + "Content-Transfer-Encoding: quoted-printable\r\n"
+                + "\r\n"
+                + qp + "\r\n"
+                + boundary + "\r\n"
+                + "Content-Transfer-Encoding: 8bit\r\n"
+                + "\r\n"
+                + "plain\r\n"
+                + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    void testDecodedInputStream() throws IOException {
+        byte[] body = new byte[1000];
+        new Random(42).nextBytes(body);
+        byte[] input = encodedParts(body);
+
+        for (int bufferSize : new int[]{64, 100, 0x10000}) {
+            for (int readSize : new int[]{1, 2, 3, 7, 4096}) {
+                StreamingMultipartParser parser = StreamingMultipartParser
+                        .builder(new ByteArrayInputStream(input))
+                        .bufferSize(bufferSize)
+                        .build();
+
+                assertArrayEquals(body, readInChunks(parser.next().getDecodedInputStream(), readSize));
+                assertEquals("café au lait with a soft break and== an escape",
+                        new String(readInChunks(parser.next().getDecodedInputStream(), readSize), StandardCharsets.UTF_8));
+                assertEquals("plain",
+                        new String(readInChunks(parser.next().getDecodedInputStream(), readSize), StandardCharsets.UTF_8));
+                assertFalse(parser.hasNext());
+            }
+        }
+
+        // Single byte reads must not be sign-extended
+        StreamingMultipartParser parser = new StreamingMultipartParser(new ByteArrayInputStream(input));
+        InputStream decoded = parser.next().getDecodedInputStream();
+        for (byte b : body) {
+            assertEquals(b & 0xff, decoded.read());
+        }
+        assertEquals(-1, decoded.read());
+
+        // Unpadded base64
+        parser = new StreamingMultipartParser(new ByteArrayInputStream((""
+                + "--C7AHVyJbNc\r\n"
+                + "Content-Transfer-Encoding: base64\r\n"
+                + "\r\n"
+                + "aGk\r\n"
+                + "--C7AHVyJbNc--\r\n").getBytes(StandardCharsets.US_ASCII)));
+        assertEquals("hi", new String(parser.next().getDecodedInputStream().readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    private static byte[] readInChunks(InputStream is, int chunkSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[chunkSize];
+        for (int n; (n = is.read(chunk, 0, chunkSize)) != -1; ) {
+            out.write(chunk, 0, n);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static StreamingMultipartParser.Part encodedPart(String encoding, String body) throws IOException {
+        return new StreamingMultipartParser(new ByteArrayInputStream((""
+                + "--C7AHVyJbNc\r\n"
+                + "Content-Transfer-Encoding: " + encoding + "\r\n"
+                + "\r\n"
+                + body + "\r\n"
+                + "--C7AHVyJbNc--\r\n").getBytes(StandardCharsets.US_ASCII))).next();
+    }
+
+    @Test
+    void testMalformedTransferEncoding() throws IOException {
+        assertThrows(IllegalArgumentException.class,
+                () -> encodedPart("base64", "aGk=aGk=").getDecodedInputStream().readAllBytes());
+        assertThrows(IllegalArgumentException.class,
+                () -> encodedPart("base64", "aGlfa").getDecodedInputStream().readAllBytes());
+        assertThrows(IllegalArgumentException.class,
+                () -> encodedPart("quoted-printable", "a=G1").getDecodedInputStream().readAllBytes());
+        assertThrows(IllegalArgumentException.class,
+                () -> encodedPart("quoted-printable", "a=4").getDecodedInputStream().readAllBytes());
+        assertThrows(IllegalArgumentException.class,
+                () -> encodedPart("x-uuencode", "begin").getDecodedInputStream());
+    }
+
+    private static byte[] tinyParts(int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            out.writeBytes(("--C7AHVyJbNc\r\n"
+                    + "Content-Disposition: form-data; name=field" + i + "\r\n"
+                    + "\r\n"
+                    + "value " + i + "\r\n").getBytes(StandardCharsets.UTF_8));
+        }
+        out.writeBytes("--C7AHVyJbNc--\r\n".getBytes(StandardCharsets.UTF_8));
+
+        return out.toByteArray();
+    }
+
+    @Test
+    void testReusedPartsAllocateNothing() throws IOException {
+        int count = 20000;
+        StreamingMultipartParser parser = StreamingMultipartParser
+                .builder(new ByteArrayInputStream(tinyParts(count)))
+                .reuseParts(true)
+                .build();
+        byte[] body = new byte[64];
+
+        // Warm up and check that the recycled part describes the current one
+        StreamingMultipartParser.Part first = parser.next();
+        for (int i = 0; i < count / 2; i++) {
+            StreamingMultipartParser.Part part = i == 0 ? first : parser.next();
+            assertSame(first, part);
+            assertEquals("field" + i, part.getHeaders().getName());
+            assertEquals("value " + i, new String(body, 0, part.getInputStream().read(body), StandardCharsets.UTF_8));
+            assertEquals(-1, part.getInputStream().read(body));
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        threads.getThreadAllocatedBytes(threadId);
+        long before = threads.getThreadAllocatedBytes(threadId);
+
+        int parsed = 0;
+        while (parser.hasNext()) {
+            InputStream is = parser.next().getInputStream();
+            while (is.read(body) != -1) {
+                // discard
+            }
+            parsed++;
+        }
+
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertEquals(count / 2, parsed);
+        assertTrue(allocated < parsed, "allocated " + allocated + " bytes for " + parsed + " parts");
+    }
+
+    @Test
+    void testPartStreamContract() throws IOException {
+        byte[] body = new byte[256];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < 5; i++) {
+            out.writeBytes("--C7AHVyJbNc\r\nContent-Type: application/octet-stream\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            out.writeBytes(body);
+            out.writeBytes("\r\n".getBytes(StandardCharsets.UTF_8));
+        }
+        out.writeBytes("--C7AHVyJbNc--\r\n".getBytes(StandardCharsets.UTF_8));
+
+        for (int bufferSize : new int[]{100, 0x10000}) {
+            StreamingMultipartParser parser = new StreamingMultipartParser(
+                    new ByteArrayInputStream(out.toByteArray()), bufferSize);
+
+            // Single bytes are not sign-extended
+            InputStream is = parser.next().getInputStream();
+            for (int i = 0; i < body.length; i++) {
+                assertEquals(i, is.read());
+            }
+            assertEquals(-1, is.read());
+
+            is = parser.next().getInputStream();
+            int available = is.available();
+            assertTrue(available > 0 && available <= body.length);
+            if (bufferSize > body.length) {
+                assertEquals(body.length, available);
+            }
+            assertEquals(200, is.skip(200));
+            assertEquals(200, is.read());
+            assertEquals(55, is.skip(200));
+            assertEquals(0, is.available());
+            assertEquals(-1, is.read());
+
+            is = parser.next().getInputStream();
+            assertArrayEquals(Arrays.copyOf(body, 10), is.readNBytes(10));
+            assertArrayEquals(Arrays.copyOfRange(body, 10, body.length), is.readNBytes(1000));
+            assertThrows(IllegalStateException.class, is::read);
+
+            assertArrayEquals(body, parser.next().getInputStream().readAllBytes());
+
+            // Nothing left to read before the boundary
+            is = parser.next().getInputStream();
+            assertEquals(body.length, is.skip(Long.MAX_VALUE));
+            assertEquals(0, is.readAllBytes().length);
+            assertFalse(parser.hasNext());
+        }
+    }
+
+    @Test
+    void testElasticBuffer() throws IOException {
+        byte[] file = new byte[1 << 20];
+        new Random(5).nextBytes(file);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] fields = tinyParts(3);
+        out.write(fields, 0, fields.length - "--C7AHVyJbNc--\r\n".length());
+        out.writeBytes("--C7AHVyJbNc\r\nContent-Disposition: form-data; name=file\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+        out.writeBytes(file);
+        out.writeBytes("\r\n--C7AHVyJbNc\r\nContent-Disposition: form-data; name=after\r\n\r\nlast\r\n--C7AHVyJbNc--\r\n"
+                .getBytes(StandardCharsets.UTF_8));
+
+        ParserMetrics metrics = new ParserMetrics();
+        StreamingMultipartParser parser = StreamingMultipartParser
+                .builder(new ByteArrayInputStream(out.toByteArray()))
+                .bufferSize(4096)
+                .maxBufferSize(1 << 16)
+                .shrinkBuffer(true)
+                .listener(metrics)
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("value " + i, new String(parser.next().getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(0, metrics.getResizes());
+
+        assertArrayEquals(file, parser.next().getInputStream().readAllBytes());
+        // Grown from 4 KB to 64 KB in four steps, and back in one once the rest fits
+        assertEquals(5, metrics.getResizes());
+
+        assertEquals("last", new String(parser.next().getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+        assertFalse(parser.hasNext());
+    }
+
+    private static byte[] nestedParts(String mail) {
+        return (""
+                + "--C7AHVyJbNc\r\n"
+                + "Content-Disposition: form-data; name=field\r\n"
+                + "\r\n"
+                + "value\r\n"
+                + "--C7AHVyJbNc\r\n"
+                + "Content-Disposition: form-data; name=mail\r\n"
+                + "Content-Type: multipart/mixed; boundary=inner1\r\n"
+                + "\r\n"
+                + mail + "\r\n"
+                + "--C7AHVyJbNc\r\n"
+                + "Content-Disposition: form-data; name=after\r\n"
+                + "\r\n"
+                + "last\r\n"
+                + "--C7AHVyJbNc--\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final String MAIL = ""
+            + "This is a multi-part message in MIME format.\r\n"
+            + "--inner1\r\n"
+            + "Content-Type: text/plain\r\n"
+            + "\r\n"
+            + "Hello\r\n"
+            + "--inner1\r\n"
+            + "Content-Type: multipart/alternative; boundary=\"inner2\"\r\n"
+            + "\r\n"
+            + "--inner2\r\n"
+            + "Content-Type: text/plain\r\n"
+            + "\r\n"
+            + "plain\r\n"
+            + "--inner2\r\n"
+            + "Content-Type: text/html\r\n"
+            + "\r\n"
+            + "<p>html</p>\r\n"
+            + "--inner2--\r\n"
+            + "\r\n"
+            + "--inner1--\r\n"
+            + "epilogue";
+
+    private static void readNested(StreamingMultipartParser parser, List<String> bodies) throws IOException {
+        while (parser.hasNext()) {
+            StreamingMultipartParser.Part part = parser.next();
+            ContentType contentType = part.getHeaders().getContentType();
+            if (contentType != null && contentType.isMultipart()) {
+                readNested(part.openNestedParser(), bodies);
+                assertThrows(IllegalStateException.class, () -> part.getInputStream().read());
+            } else {
+                bodies.add(new String(part.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    void testNestedMultipart() throws IOException {
+        for (int bufferSize : new int[]{128, 200, 4096}) {
+            for (boolean lowLatency : new boolean[]{false, true}) {
+                int[] acquired = new int[1];
+                BufferPool pool = new BufferPool() {
+                    @Override
+                    public byte[] acquire(int size) {
+                        acquired[0]++;
+                        return new byte[size];
+                    }
+
+                    @Override
+                    public void release(byte[] buffer) {
+                    }
+                };
+
+                StreamingMultipartParser parser = StreamingMultipartParser
+                        .builder(new ByteArrayInputStream(nestedParts(MAIL)))
+                        .bufferSize(bufferSize)
+                        .lowLatency(lowLatency)
+                        .bufferPool(pool)
+                        .build();
+
+                List<String> bodies = new ArrayList<>();
+                readNested(parser, bodies);
+
+                assertEquals(List.of("value", "Hello", "plain", "<p>html</p>", "last"), bodies);
+                assertEquals(1, acquired[0]);
+            }
+        }
+    }
+
+    @Test
+    void testNestedMultipartAbandoned() throws IOException {
+        StreamingMultipartParser parser = StreamingMultipartParser
+                .builder(new ByteArrayInputStream(nestedParts(MAIL)))
+                .bufferSize(128)
+                .autoDrain(true)
+                .build();
+
+        StreamingMultipartParser.Part field = parser.next();
+        assertThrows(IllegalStateException.class, field::openNestedParser);
+
+        StreamingMultipartParser nested = parser.next().openNestedParser();
+        InputStream hello = nested.next().getInputStream();
+        assertEquals('H', hello.read());
+
+        StreamingMultipartParser.Part after = parser.next();
+        assertEquals("after", after.getHeaders().getName());
+        assertThrows(IllegalStateException.class, hello::read);
+        assertFalse(nested.hasNext());
+        assertEquals("last", new String(after.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+        assertFalse(parser.hasNext());
+    }
+
+    @Test
+    void testMalformedNestedMultipart() throws IOException {
+        String unterminated = "--inner1\r\nContent-Type: text/plain\r\n\r\nHello";
+        StreamingMultipartParser parser = new StreamingMultipartParser(new ByteArrayInputStream(nestedParts(unterminated)));
+        parser.next().skip();
+        StreamingMultipartParser nested = parser.next().openNestedParser();
+        assertThrows(IllegalArgumentException.class, () -> nested.next().getInputStream().readAllBytes());
+
+        String noBoundary = "Hello";
+        parser = new StreamingMultipartParser(new ByteArrayInputStream(nestedParts(noBoundary)));
+        parser.next().skip();
+        StreamingMultipartParser.Part mail = parser.next();
+        assertThrows(IllegalArgumentException.class, mail::openNestedParser);
+        assertEquals(0, mail.skip());
+        assertEquals("after", parser.next().getHeaders().getName());
+    }
 }